@@ -1,7 +1,9 @@
 import config.Config;
+import config.Session;
 import config.Version;
 import game.data.WorldManager;
 import game.data.chunk.Chunk;
+import game.data.chunk.ChunkSection;
 import game.data.chunk.palette.SingleValuePalette;
 import game.data.chunk.version.ChunkSection_1_18;
 import game.data.chunk.version.Chunk_1_17;
@@ -127,14 +129,20 @@ public class WorldDiff {
                         s2 = (ChunkSection_1_18) c2.createNewChunkSection(sectionY, new SingleValuePalette(0));
                     }
 
+                    int[] states;
+                    int[] states2;
+                    try {
+                        states = s.getNumericBlockStates();
+                        states2 = s2.getNumericBlockStates();
+                    } catch (IllegalArgumentException e) {
+                        states = states2 = null;
+                    }
+
                     for (int y = 0; y < 16; ++y) {
                         for (int z = 0; z < 16; ++z) {
                             for (int x = 0; x < 16; ++x) {
-                                try {
-                                    if (compare(s.getNumericBlockStateAt(x, y, z), s2.getNumericBlockStateAt(x, y, z))) {
-                                        s.setBlockAt(new Coordinate3D(x, y, z), 0); // air
-                                    }
-                                } catch (IllegalArgumentException e) {
+                                int index = ChunkSection.getBlockIndex(x, y, z);
+                                if (states == null || compare(states[index], states2[index])) {
                                     s.setBlockAt(new Coordinate3D(x, y, z), 0); // air
                                 }
                             }
@@ -202,7 +210,7 @@ public class WorldDiff {
         Chunk_1_17.setWorldHeight(-63, 384);
         Config.setInstance(new Config());
         Config.setProtocolVersion(763);
-        WorldManager man = new WorldManager();
+        WorldManager man = new WorldManager(Session.main());
 
         initLeaves();
     }
@@ -10,56 +10,49 @@ import game.protocol.ProtocolVersionHandler;
 import gui.GuiManager;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
-import java.util.function.Consumer;
 import javafx.application.Platform;
 import org.apache.commons.lang3.SystemUtils;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
-import packets.builder.PacketBuilder;
 import proxy.ConnectionDetails;
 import proxy.ConnectionManager;
 import proxy.PacketInjector;
 import proxy.auth.AuthDetails;
 import proxy.auth.AuthenticationMethod;
 import proxy.auth.MicrosoftAuthHandler;
+import proxy.encryption.CipherEngine;
+import proxy.metrics.Metrics;
 import util.LocalDateTimeAdapter;
 import util.PathUtils;
 
 public class Config {
-    private static final int DEFAULT_VERSION = 340;
     private static Path configPath;
 
-    private static PacketInjector injector;
     private static Config instance;
 
     // fields marked transient so they are not written to JSON file
     private transient ProtocolVersionHandler versionHandler;
-    private transient String gameVersion;
-    private transient int protocolVersion = DEFAULT_VERSION;
-    private transient int dataVersion;
-    private transient ConnectionDetails connectionDetails;
 
     private transient boolean isStarted = false;
     private transient boolean guiOnlyMode = true;
 
     private transient boolean debugWriteChunkNbt;
     private transient boolean debugTrackEvents = false;
-    private transient VersionReporter versionReporter;
 
     private MicrosoftAuthHandler microsoftAuth;
     private AuthDetails manualAuth;
     private AuthenticationMethod authMethod = AuthenticationMethod.AUTOMATIC;
 
-    public Config() {
-        this.versionReporter = new VersionReporter(0);
-    }
+    public Config() { }
 
     public static void setInstance(Config config) {
         instance = config;
@@ -112,19 +105,27 @@ public class Config {
             System.exit(1);
         }
 
+        // a replay does not need any connection settings
+        if (instance.replayPath != null) {
+            disableSettingsGui();
+        }
+
         instance.settingsComplete();
     }
 
     public static ConnectionDetails getConnectionDetails() {
-        return instance.connectionDetails;
+        return Session.current().getConnectionDetails();
     }
 
     public static void setProtocolVersion(int protocolVersion) {
-        instance.protocolVersion = protocolVersion;
-        instance.versionReporter = new VersionReporter(protocolVersion);
+        setProtocolVersion(Session.current(), protocolVersion);
+    }
+
+    public static void setProtocolVersion(Session session, int protocolVersion) {
+        session.setProtocolVersion(protocolVersion);
 
         try {
-            WorldManager.getInstance().loadLevelData();
+            session.getWorldManager().loadLevelData();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -193,8 +194,7 @@ public class Config {
         centerX = (centerX >> 9) << 9;
         centerZ = (centerZ >> 9) << 9;
 
-        WorldManager.getInstance().setWorldManagerVariables(markNewChunks, writeChunks());
-        WorldManager.getInstance().updateExtendedRenderDistance(extendedRenderDistance);
+        Session.main().run(this::applyWorldSettings);
 
         writeSettings();
 
@@ -205,13 +205,70 @@ public class Config {
         isStarted = true;
 
         versionHandler = ProtocolVersionHandler.getInstance();
-        connectionDetails = new ConnectionDetails(server, portLocal, !disableSrvLookup);
+
+        Session main = Session.main();
+        if (replayPath != null) {
+            // the host is only used for display when replaying, so there is no need to look it up
+            main.setConnectionDetails(new ConnectionDetails(Objects.requireNonNullElse(server, "localhost"), portLocal, false));
+        } else {
+            main.setConnectionDetails(new ConnectionDetails(server, portLocal, !disableSrvLookup));
+        }
 
         if (!disableGui) {
             GuiManager.loadSceneMap();
         }
 
-        new ConnectionManager().startProxy();
+        if (metricsPort > 0) {
+            try {
+                Metrics.start(metricsPort);
+            } catch (IOException ex) {
+                System.err.println("Could not start metrics server on port " + metricsPort + ": " + ex.getMessage());
+            }
+        }
+
+        if (replayPath != null) {
+            new ConnectionManager(main).startReplay(Paths.get(replayPath), replayRealTime);
+        } else {
+            new ConnectionManager(main).startProxy();
+        }
+
+        if (additionalSessions != null) {
+            additionalSessions.forEach(this::startAdditionalSession);
+        }
+    }
+
+    private void applyWorldSettings() {
+        WorldManager.getInstance().setWorldManagerVariables(markNewChunks, writeChunks());
+        WorldManager.getInstance().updateExtendedRenderDistance(extendedRenderDistance);
+    }
+
+    /**
+     * Start another proxy in the same process, given as server,local-port[,output-directory]. It is set up in the
+     * same way as the main session, but the GUI only shows the main session.
+     */
+    private void startAdditionalSession(String description) {
+        String[] parts = description.split(",");
+        if (parts.length < 2) {
+            System.err.println("Invalid session '" + description + "', expected server,local-port[,output-directory]");
+            return;
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid port in session '" + description + "'");
+            return;
+        }
+        String host = parts[0].trim();
+        String outputDir = parts.length > 2 ? parts[2].trim() : worldOutputDir + "-" + port;
+
+        Session session = new Session(host + ":" + port, outputDir);
+        session.run(() -> {
+            session.setConnectionDetails(new ConnectionDetails(host, port, !disableSrvLookup));
+            applyWorldSettings();
+            new ConnectionManager(session).startProxy();
+        });
     }
 
     private void writeSettings() {
@@ -292,15 +349,14 @@ public class Config {
         }
     }
 
-    public static Protocol getGameProtocol() {
-        Protocol p = instance.versionHandler.getProtocolByProtocolVersion(instance.protocolVersion);
-        instance.dataVersion = p.getDataVersion();
-        instance.gameVersion = p.getVersion();
-        instance.versionReporter = new VersionReporter(instance.protocolVersion);
+    public static Protocol getGameProtocol(Session session) {
+        Protocol p = instance.versionHandler.getProtocolByProtocolVersion(session.getProtocolVersion());
+        session.setGameVersion(p.getVersion(), p.getDataVersion());
+        session.setVersionReporter(new VersionReporter(session.getProtocolVersion()));
 
-        new Thread(() -> loadVersionRegistries(p)).start();
+        Thread.ofVirtual().start(() -> session.run(() -> loadVersionRegistries(p)));
 
-        System.out.println("Using protocol of game version " + p.getVersion() + " (" + instance.protocolVersion + ")");
+        System.out.println("Using protocol of game version " + p.getVersion() + " (" + session.getProtocolVersion() + ")");
         return p;
     }
 
@@ -328,12 +384,8 @@ public class Config {
     /**
      * Packet injector allows new packets to be sent to the client.
      */
-    public static void registerPacketInjector(PacketInjector injector) {
-        Config.injector = injector;
-    }
-
     public static PacketInjector getPacketInjector() {
-        return injector;
+        return Session.current().getPacketInjector();
     }
 
 
@@ -402,6 +454,10 @@ public class Config {
             usage = "Disable checking for true address using DNS service records")
     public boolean disableSrvLookup = false;
 
+    @Option(name = "--disable-upstream-prewarm",
+            usage = "Disable keeping a connection to the server ready for the next client")
+    public boolean disableUpstreamPrewarm = false;
+
     @Option(name = "--disable-mark-unsaved",
             usage = "Disable marking unsaved chunks in red on the map")
     public boolean disableMarkUnsavedChunks = false;
@@ -438,6 +494,42 @@ public class Config {
             usage = "Enable automatically switching to cave render mode when underground.")
     public boolean enableCaveRenderMode = false;
 
+    @Option(name = "--injection-rate",
+            usage = "Maximum rate in KB/s at which extended render distance chunks are sent to the client. Only used before 1.20.2, newer clients report the rate they can handle.")
+    public int injectionRate = 2048;
+
+    @Option(name = "--cipher-engine",
+            usage = "Implementation used to encrypt the connection. BATCHED (default) decrypts in batches, which is faster. JCE uses the Java crypto provider for both directions.")
+    private transient CipherEngine cipherEngine = CipherEngine.BATCHED;
+
+    @Option(name = "--session", metaVar = "server,port[,output]",
+            usage = "Run another download session in the same process, connecting to the given server and listening on the given local port. Can be given multiple times.")
+    private transient List<String> additionalSessions;
+
+    @Option(name = "--reconnect-grace-period",
+            usage = "Keep the loaded world in memory for this many seconds after disconnecting, so that reconnecting to the same dimension does not need to load it again. Set to 0 to unload right away.")
+    private transient int reconnectGracePeriod = 30;
+
+    @Option(name = "--status-cache-ttl",
+            usage = "Answer server list pings with the last status response from the server, refreshing it in the background once it is older than this many seconds. Set to 0 to always ask the server.")
+    private transient int statusCacheTtl = 10;
+
+    @Option(name = "--metrics-port",
+            usage = "Serve metrics in the Prometheus format on the given port, at localhost:<port>/metrics.")
+    private transient int metricsPort = 0;
+
+    @Option(name = "--record",
+            usage = "Record the decrypted traffic to the given file, so that the session can be replayed later. Sessions added with --session are recorded to the same path with the session name appended.")
+    private transient String recordingPath;
+
+    @Option(name = "--replay",
+            usage = "Replay a session recorded with --record instead of starting the proxy.")
+    private transient String replayPath;
+
+    @Option(name = "--replay-realtime", depends = "--replay",
+            usage = "Replay the session with its original timing instead of as fast as possible.")
+    private transient boolean replayRealTime = false;
+
     // not really important enough to have an option for, can change it in config file
     public boolean smoothZooming = true;
 
@@ -451,7 +543,7 @@ public class Config {
     }
 
     public static String getWorldOutputDir() {
-        return instance.worldOutputDir;
+        return Objects.requireNonNullElse(Session.current().getWorldOutputDir(), instance.worldOutputDir);
     }
 
     public static boolean isInDevMode() {
@@ -459,17 +551,51 @@ public class Config {
     }
 
     public static int getDataVersion() {
-        return instance.dataVersion;
+        return Session.current().getDataVersion();
     }
 
     public static String getGameVersion() {
-        return instance.gameVersion;
+        return Session.current().getGameVersion();
     }
 
     public static boolean renderOtherPlayers() { return instance.renderOtherPlayers; }
 
+    public static int getInjectionRate() {
+        return instance.injectionRate;
+    }
+
+    public static CipherEngine getCipherEngine() {
+        return instance.cipherEngine;
+    }
+
+    public static int getReconnectGracePeriod() {
+        return instance.reconnectGracePeriod;
+    }
+
+    public static boolean prewarmUpstream() {
+        return !instance.disableUpstreamPrewarm;
+    }
+
+    public static int getStatusCacheTtl() {
+        return instance.statusCacheTtl;
+    }
+
+    /**
+     * Get the file to record the given session to. Every session needs its own file, so the name of additional
+     * sessions is appended to the configured path.
+     */
+    public static Path getRecordingPath(Session session) {
+        if (instance.recordingPath == null) {
+            return null;
+        }
+        if (session == Session.main()) {
+            return Paths.get(instance.recordingPath);
+        }
+        return Paths.get(instance.recordingPath + "-" + session.getName().replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
     public static VersionReporter versionReporter() {
-        return instance.versionReporter;
+        return Session.current().getVersionReporter();
     }
 
     public static AuthDetails getManualAuthDetails() {
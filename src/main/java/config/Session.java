@@ -0,0 +1,187 @@
+package config;
+
+import game.data.WorldManager;
+import game.data.registries.RegistryManager;
+import java.util.concurrent.ThreadFactory;
+import proxy.ConnectionDetails;
+import proxy.PacketInjector;
+
+/**
+ * A single download session: one client connected through the proxy to one server, writing to one world. Everything
+ * that depends on the connection or the world being downloaded is kept here, so that a single process can run several
+ * sessions at once. Data that does not change, like the global block palettes and the version registries, is shared
+ * between all sessions.
+ * <p>
+ * Code finds the session it belongs to through the thread it is running on. The connection manager, world manager and
+ * packet injector are given their session explicitly, and bind it to the threads they run on: their executors create
+ * threads through {@link #threadFactory}, and work on threads shared between sessions is wrapped in {@link #run}.
+ * Otherwise, threads inherit the session of the thread that created them. Threads that are not bound to any session,
+ * such as the GUI and the HTTP servers, see the main session.
+ */
+public class Session {
+    private static final int DEFAULT_VERSION = 340;
+
+    private static final Session main = new Session("Main", null);
+    private static final InheritableThreadLocal<Session> current = new InheritableThreadLocal<>();
+
+    private final String name;
+    private final String worldOutputDir;
+    private ConnectionDetails connectionDetails;
+
+    private int protocolVersion = DEFAULT_VERSION;
+    private int dataVersion;
+    private String gameVersion;
+    private VersionReporter versionReporter;
+
+    private int minBlockSectionY = 0;
+    private int maxBlockSectionY = 15;
+
+    private WorldManager worldManager;
+    private RegistryManager registryManager;
+    private PacketInjector packetInjector;
+
+    /**
+     * @param name           name of the session, used in thread names and messages
+     * @param worldOutputDir the directory to write the world to, or null to use the configured one
+     */
+    public Session(String name, String worldOutputDir) {
+        this.name = name;
+        this.worldOutputDir = worldOutputDir;
+        this.versionReporter = new VersionReporter(0);
+    }
+
+    /**
+     * Get the session of the current thread.
+     */
+    public static Session current() {
+        Session session = current.get();
+        return session == null ? main : session;
+    }
+
+    public static Session main() {
+        return main;
+    }
+
+    /**
+     * Get a thread factory for executors that belong to this session. Their threads are bound to this session, no
+     * matter which thread caused them to be created.
+     */
+    public ThreadFactory threadFactory(String name) {
+        return r -> new Thread(() -> run(r), name);
+    }
+
+    /**
+     * Same as {@link #threadFactory}, but creates virtual threads. These should be used for services that mostly wait
+     * on file I/O or sleep, while CPU-bound work stays on platform threads.
+     */
+    public ThreadFactory virtualThreadFactory(String name) {
+        ThreadFactory factory = Thread.ofVirtual().name(name).factory();
+        return r -> factory.newThread(() -> run(r));
+    }
+
+    /**
+     * Run the given code as part of this session. Any threads started by it will also belong to this session.
+     */
+    public void run(Runnable r) {
+        Session previous = current.get();
+        current.set(this);
+        try {
+            r.run();
+        } finally {
+            current.set(previous);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getWorldOutputDir() {
+        return worldOutputDir;
+    }
+
+    public ConnectionDetails getConnectionDetails() {
+        return connectionDetails;
+    }
+
+    public void setConnectionDetails(ConnectionDetails connectionDetails) {
+        this.connectionDetails = connectionDetails;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        this.versionReporter = new VersionReporter(protocolVersion);
+    }
+
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    public String getGameVersion() {
+        return gameVersion;
+    }
+
+    void setGameVersion(String gameVersion, int dataVersion) {
+        this.gameVersion = gameVersion;
+        this.dataVersion = dataVersion;
+    }
+
+    public VersionReporter getVersionReporter() {
+        return versionReporter;
+    }
+
+    void setVersionReporter(VersionReporter versionReporter) {
+        this.versionReporter = versionReporter;
+    }
+
+    /**
+     * Set the height of the world, which from 1.17 depends on the dimension.
+     */
+    public void setWorldHeight(int minY, int height) {
+        minBlockSectionY = minY >> 4;
+        maxBlockSectionY = minBlockSectionY + (height >> 4) - 1;
+    }
+
+    public int getMinBlockSectionY() {
+        return minBlockSectionY;
+    }
+
+    public int getMaxBlockSectionY() {
+        return maxBlockSectionY;
+    }
+
+    public synchronized WorldManager getWorldManager() {
+        if (worldManager == null) {
+            // the world manager may be created from any thread, make sure what it sets up belongs to this session
+            run(() -> worldManager = new WorldManager(this));
+        }
+        return worldManager;
+    }
+
+    public synchronized void setWorldManager(WorldManager worldManager) {
+        this.worldManager = worldManager;
+    }
+
+    public synchronized RegistryManager getRegistryManager() {
+        if (registryManager == null) {
+            registryManager = new RegistryManager();
+        }
+        return registryManager;
+    }
+
+    public synchronized void setRegistryManager(RegistryManager registryManager) {
+        this.registryManager = registryManager;
+    }
+
+    public PacketInjector getPacketInjector() {
+        return packetInjector;
+    }
+
+    public void setPacketInjector(PacketInjector packetInjector) {
+        this.packetInjector = packetInjector;
+    }
+}
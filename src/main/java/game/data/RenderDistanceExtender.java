@@ -58,9 +58,13 @@ public class RenderDistanceExtender {
         }
     }
 
+    /**
+     * Loading chunks is mostly reading region files and waiting for the client, so the extender runs on a virtual
+     * thread. It stays a single thread so that updates are handled in order.
+     */
     private void start() {
         executorService =
-            Executors.newSingleThreadExecutor((r) -> new Thread(r, "Render Distance Extender"));
+            Executors.newSingleThreadExecutor(worldManager.getSession().virtualThreadFactory("Render Distance Extender"));
         delay();
 
         this.status = Status.ACTIVE;
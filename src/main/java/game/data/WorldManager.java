@@ -14,12 +14,14 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
@@ -29,6 +31,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import config.Config;
+import config.Session;
 import game.data.chunk.Chunk;
 import game.data.chunk.ChunkBinary;
 import game.data.chunk.ChunkEntities;
@@ -54,7 +57,9 @@ import game.data.villagers.VillagerManager;
 import gui.GuiManager;
 import packets.DataTypeProvider;
 import packets.builder.PacketBuilder;
+import proxy.ConnectionDetails;
 import proxy.PacketInjector;
+import proxy.metrics.Metrics;
 import se.llbit.nbt.Tag;
 import util.PathUtils;
 
@@ -64,7 +69,6 @@ import util.PathUtils;
 public class WorldManager {
     private static final int INIT_SAVE_DELAY = 5 * 1000;
     private static final int SAVE_DELAY = 12 * 1000;
-    private static WorldManager instance;
     private final LevelData levelData;
     private final MapRegistry mapRegistry;
     private final Map<CoordinateDim2D, Queue<Runnable>> chunkLoadCallbacks = new ConcurrentHashMap<>();
@@ -94,9 +98,15 @@ public class WorldManager {
     private final EntityRegistry entityRegistry;
     private final ChunkFactory chunkFactory;
 
+    private final Session session;
     private ScheduledExecutorService saveService;
 
-    public WorldManager() {
+    // set while the chunks of a lost connection are kept in case the player reconnects
+    private ScheduledFuture<?> pendingUnload;
+    private String disconnectedFrom;
+
+    public WorldManager(Session session) {
+        this.session = session;
         this.isStarted = false;
         this.entityMap = new EntityNames();
         this.entityRegistry = new EntityRegistry(this);
@@ -115,15 +125,29 @@ public class WorldManager {
         this.levelData.registerModifier(fn);
     }
 
+    /**
+     * Get the world manager of the current session.
+     */
     public static WorldManager getInstance() {
-        if (instance == null) {
-            instance = new WorldManager();
-        }
-        return instance;
+        return Session.current().getWorldManager();
     }
 
     public static void setInstance(WorldManager worldManager) {
-        instance = worldManager;
+        Session.current().setWorldManager(worldManager);
+    }
+
+    /**
+     * The session this world belongs to. Threads started by the world manager and its services are bound to it.
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * The GUI only shows the main session, so other sessions should not draw to it.
+     */
+    private boolean isShownInGui() {
+        return session == Session.main();
     }
 
     public void registerChunkLoadCallback(CoordinateDim2D coordinate, Runnable r) {
@@ -150,7 +174,8 @@ public class WorldManager {
     }
 
     public void setDimension(Dimension dimension) {
-        if (this.dimension.equals(dimension)) {
+        boolean sameServer = cancelPendingUnload();
+        if (this.dimension.equals(dimension) && sameServer) {
             return;
         }
 
@@ -159,7 +184,9 @@ public class WorldManager {
 
         this.renderDistanceExtender.reset();
 
-        GuiManager.setDimension(this.dimension);
+        if (isShownInGui()) {
+            GuiManager.setDimension(this.dimension);
+        }
     }
 
     public void setDimensionType(DimensionType dimensionType) {
@@ -243,6 +270,10 @@ public class WorldManager {
      * @return the number of chunks drawn
      */
     private void drawRegion(McaFile file) {
+        if (!isShownInGui()) {
+            return;
+        }
+
         GuiManager.resetRegion(file.getRegionLocation());
         Map<CoordinateDim2D, Chunk> chunks = file.getParsedChunks(this.dimension);
 
@@ -301,7 +332,7 @@ public class WorldManager {
             r.addChunk(chunk.location, chunk, overrideExisting);
         }
 
-        if (drawInGui) {
+        if (drawInGui && isShownInGui()) {
             // draw the chunk once its been parsed
             chunk.whenParsed(() -> GuiManager.setChunkLoaded(chunk.location, chunk));
         }
@@ -385,7 +416,12 @@ public class WorldManager {
      */
     public void touchChunk(ChunkEntities c) {
         c.touch();
-        regions.get(c.getLocation().chunkToDimRegion()).touch();
+
+        // chunks that are not part of the world, like those read by the world diff tool, have no region
+        Region region = regions.get(c.getLocation().chunkToDimRegion());
+        if (region != null) {
+            region.touch();
+        }
     }
 
     public DimensionRegistry getDimensionRegistry() {
@@ -419,11 +455,14 @@ public class WorldManager {
     }
 
     /**
-     * Periodically save the world.
+     * Periodically save the world. Saving mostly waits on region files, so it runs on a virtual thread.
      */
     public void start() {
-        ThreadFactory namedThreadFactory = r -> new Thread(r, "World Save Service");
-        saveService = Executors.newScheduledThreadPool(1, namedThreadFactory);
+        ThreadFactory namedThreadFactory = session.virtualThreadFactory("World Save Service");
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, namedThreadFactory);
+        Metrics.registerQueue("World Save Service", () -> executor.getQueue().size());
+
+        saveService = executor;
         saveService.scheduleWithFixedDelay(() -> attempt(this::save), INIT_SAVE_DELAY, SAVE_DELAY, TimeUnit.MILLISECONDS);
     }
 
@@ -442,6 +481,7 @@ public class WorldManager {
             return;
         }
         savingDimension.add(dimension);
+        long start = System.nanoTime();
 
         // save level.dat
         attempt(levelData::save);
@@ -464,6 +504,7 @@ public class WorldManager {
         // remove empty regions
         regions.entrySet().removeIf(el -> el.getValue().isEmpty());
 
+        Metrics.recordSave(System.nanoTime() - start);
         savingDimension.remove(dimension);
 
         // suggest GC to clear up some memory that may have been freed by saving
@@ -517,7 +558,7 @@ public class WorldManager {
     }
 
     public void deleteAllExisting() {
-        regions = new HashMap<>();
+        regions = new ConcurrentHashMap<>();
         chunkFactory.clear();
 
         try {
@@ -530,7 +571,9 @@ public class WorldManager {
             System.out.println("Could not delete region files. Reason: " + ex.getMessage());
         }
 
-        GuiManager.clearChunks();
+        if (isShownInGui()) {
+            GuiManager.clearChunks();
+        }
     }
 
     public boolean isPaused() {
@@ -575,14 +618,13 @@ public class WorldManager {
      * @return the set of chunks that was actually sent to the client.
      */
     public Set<Coordinate2D> sendChunksToPlayer(Collection<Coordinate2D> desired) {
-        PacketInjector injector = Config.getPacketInjector();
+        PacketInjector injector = session.getPacketInjector();
         Set<Coordinate2D> loaded = new HashSet<>();
 
-        int chunksSent = 0;
         Map<Coordinate2D, McaFile> loadedFiles = new HashMap<>();
         for (Coordinate2D coords : desired) {
-            // since there is delay in this loop, it's possible some of the chunks were sent to the client by the time
-            // we get to them.
+            // loading chunks takes time, it's possible some of the chunks were sent to the client by the time we get
+            // to them.
             if (!this.renderDistanceExtender.isStillNeeded(coords)) {
                 continue;
             }
@@ -615,8 +657,7 @@ public class WorldManager {
                 if (light != null) {
                     injector.enqueuePacket(light);
                 }
-                injector.enqueuePacket(chunkData);
-                chunksSent++;
+                injector.enqueueChunk(chunkData);
 
             } catch (IncompleteChunkException ex) {
                 ex.printStackTrace();
@@ -625,15 +666,9 @@ public class WorldManager {
             }
             loaded.add(coords);
 
-            if (Config.drawExtendedChunks()) {
+            if (Config.drawExtendedChunks() && isShownInGui()) {
                 GuiManager.setChunkState(coords, ChunkImageState.EXTENDED);
             }
-
-            // periodically sleep so the client doesn't stutter from receiving too many chunks
-            chunksSent = (chunksSent + 1) % 5;
-            if (chunksSent == 0) {
-                attempt(() -> Thread.sleep(48));
-            }
         }
         return loaded;
     }
@@ -643,7 +678,53 @@ public class WorldManager {
         this.entityRegistry.reset();
         this.chunkFactory.reset();
 
-        this.saveAndUnloadChunks();
+        this.scheduleUnload();
+    }
+
+    /**
+     * Keep the loaded chunks for a while after the connection is lost. If the player reconnects to the same dimension,
+     * the chunks sent again by the server are merged with the ones still in memory instead of with the ones on disk.
+     * If nobody reconnects in time, the chunks are saved and unloaded as usual. They are still saved periodically in
+     * the meantime.
+     */
+    private synchronized void scheduleUnload() {
+        int gracePeriod = Config.getReconnectGracePeriod();
+        if (saveService == null || gracePeriod <= 0) {
+            saveAndUnloadChunks();
+            return;
+        }
+
+        if (pendingUnload != null) {
+            pendingUnload.cancel(false);
+        }
+
+        ConnectionDetails details = Config.getConnectionDetails();
+        disconnectedFrom = details == null ? null : details.getFriendlyHost();
+        pendingUnload = saveService.schedule(this::unloadAfterGracePeriod, gracePeriod, TimeUnit.SECONDS);
+    }
+
+    private synchronized void unloadAfterGracePeriod() {
+        if (pendingUnload == null) {
+            return;
+        }
+        pendingUnload = null;
+        saveAndUnloadChunks();
+    }
+
+    /**
+     * Called when a new connection joins a dimension. Cancels the unload of the previous connection's chunks, if there
+     * is one pending.
+     * @return false if the chunks belong to a connection to a different server, in which case they cannot be re-used
+     */
+    private synchronized boolean cancelPendingUnload() {
+        if (pendingUnload == null) {
+            return true;
+        }
+        pendingUnload.cancel(false);
+        pendingUnload = null;
+
+        ConnectionDetails details = Config.getConnectionDetails();
+        return details == null || Objects.equals(disconnectedFrom, details.getFriendlyHost());
     }
 
     public EntityRegistry getEntityRegistry() {
@@ -677,9 +758,10 @@ public class WorldManager {
         if (!Config.handleBlockChanges()) {
             return;
         }
-        chunkFactory.runOnFactoryThread(() -> {
-            Coordinate3D coords = provider.readCoordinates();
-            Chunk c = getChunk(coords.globalToChunk().addDimension(this.dimension));
+        Coordinate3D coords = provider.readCoordinates();
+        CoordinateDim2D chunkPos = coords.globalToChunk().addDimension(this.dimension);
+        chunkFactory.runOnFactoryThread(chunkPos, () -> {
+            Chunk c = getChunk(chunkPos);
             if (c == null) {
                 return;
             }
@@ -693,8 +775,9 @@ public class WorldManager {
         if (!Config.handleBlockChanges()) {
             return;
         }
-        chunkFactory.runOnFactoryThread(() -> {
-            Chunk c = getChunk(pos.addDimension(this.dimension));
+        CoordinateDim2D chunkPos = pos.addDimension(this.dimension);
+        chunkFactory.runOnFactoryThread(chunkPos, () -> {
+            Chunk c = getChunk(chunkPos);
             if (c == null) {
                 return;
             }
@@ -709,10 +792,10 @@ public class WorldManager {
      * it is given to the chunk to parse immediately.
      */
     public void updateLight(DataTypeProvider provider) {
-        chunkFactory.runOnFactoryThread(() -> {
-            int chunkX = provider.readVarInt();
-            int chunkZ = provider.readVarInt();
-            CoordinateDim2D coords = new CoordinateDim2D(chunkX, chunkZ, dimension);
+        int chunkX = provider.readVarInt();
+        int chunkZ = provider.readVarInt();
+        CoordinateDim2D coords = new CoordinateDim2D(chunkX, chunkZ, dimension);
+        chunkFactory.runOnFactoryThread(coords, () -> {
             Chunk c = getChunk(coords);
             if (c == null) {
                 chunkFactory.updateLight(coords, provider);
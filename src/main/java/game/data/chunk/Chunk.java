@@ -372,9 +372,8 @@ public abstract class Chunk extends ChunkEntities {
 
     protected void writeChunkSections(PacketBuilder packet) {
         PacketBuilder columns = writeSectionData();
-        byte[] columnArr = columns.toArray();
-        packet.writeVarInt(columnArr.length);
-        packet.writeByteArray(columnArr);
+        packet.writeVarInt(columns.size());
+        packet.writeBuilder(columns);
     }
 
     public PacketBuilder toLightPacket() { return null; }
@@ -505,17 +504,8 @@ public abstract class Chunk extends ChunkEntities {
     public void updateBlock(Coordinate3D coords, int blockStateId, boolean suppressUpdate) {
         raiseEvent("update block");
 
-        int sectionY = (int) Math.floor((double) coords.getY() / SECTION_HEIGHT);
-
-        // if there's no section, we create an empty one
-        if (getChunkSection(sectionY) == null) {
-            ChunkSection newChunkSection = createNewChunkSection((byte) sectionY, Palette.empty());
-            newChunkSection.setBlocks(new long[256]);
-            setChunkSection(sectionY, newChunkSection);
-        }
-
-        // if the section is still null, that means it's likely out of the world bounds so just ignore this update
-        ChunkSection section = getChunkSection(sectionY);
+        // if the section is null, that means it's likely out of the world bounds so just ignore this update
+        ChunkSection section = getOrCreateSection(sectionIndex(coords));
         if (section == null) { return; }
 
         section.setBlockAt(coords.chunkLocalToSectionLocal(), blockStateId);
@@ -538,26 +528,76 @@ public abstract class Chunk extends ChunkEntities {
      */
     public void updateBlocks(Coordinate3D pos, DataTypeProvider provider) {
         int count = provider.readVarInt();
-        Collection<Coordinate3D> toUpdate = new ArrayList<>();
-        while (count-- > 0) {
+        Coordinate3D[] toUpdate = new Coordinate3D[count];
+        int[] blockIds = new int[count];
+        for (int i = 0; i < count; i++) {
             byte xz = provider.readNext();
             int y = provider.readNext();
             int x = (xz >>> 4) & 0x0F;
             int z = xz & 0x0F;
 
-            int blockId = provider.readVarInt();
-
-            Coordinate3D blockPos = new Coordinate3D(x, y, z);
-            toUpdate.add(blockPos);
-
-            updateBlock(blockPos, blockId, true);
+            blockIds[i] = provider.readVarInt();
+            toUpdate[i] = new Coordinate3D(x, y, z);
         }
-        boolean wasChanged = this.chunkHeightHandler.recomputeHeights(toUpdate);
+        updateBlocks(toUpdate, blockIds);
+
+        boolean wasChanged = this.chunkHeightHandler.recomputeHeights(Arrays.asList(toUpdate));
         if (wasChanged) {
             imageFactory.generateImages();
         }
     }
 
+    /**
+     * Set the given blocks without redrawing the chunk. The blocks are grouped by section, so that each section only
+     * copies its block data once instead of once per block.
+     * @param coords chunk-local coordinates of the blocks
+     * @param blockStateIds the new state of each block, in the same order
+     */
+    protected void updateBlocks(Coordinate3D[] coords, int[] blockStateIds) {
+        raiseEvent("update blocks");
+
+        boolean[] done = new boolean[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+            if (done[i]) { continue; }
+
+            int sectionY = sectionIndex(coords[i]);
+            List<Coordinate3D> sectionCoords = new ArrayList<>();
+            int[] sectionStates = new int[coords.length - i];
+            for (int j = i; j < coords.length; j++) {
+                if (done[j] || sectionIndex(coords[j]) != sectionY) { continue; }
+
+                done[j] = true;
+                sectionStates[sectionCoords.size()] = blockStateIds[j];
+                sectionCoords.add(coords[j].chunkLocalToSectionLocal());
+            }
+
+            ChunkSection section = getOrCreateSection(sectionY);
+            if (section == null) { continue; }
+
+            section.setBlocksAt(
+                    sectionCoords.toArray(new Coordinate3D[0]),
+                    Arrays.copyOf(sectionStates, sectionCoords.size())
+            );
+        }
+    }
+
+    private static int sectionIndex(Coordinate3D coords) {
+        return Math.floorDiv(coords.getY(), SECTION_HEIGHT);
+    }
+
+    /**
+     * Get the section at the given height, creating an empty one if there is none. Returns null if the section is
+     * outside the world bounds.
+     */
+    private ChunkSection getOrCreateSection(int sectionY) {
+        if (getChunkSection(sectionY) == null) {
+            ChunkSection newChunkSection = createNewChunkSection((byte) sectionY, Palette.empty());
+            newChunkSection.setBlocks(new long[256]);
+            setChunkSection(sectionY, newChunkSection);
+        }
+        return getChunkSection(sectionY);
+    }
+
     public void updateLight(DataTypeProvider provider) {
         raiseEvent("update lighting");
     }
@@ -5,30 +5,30 @@ import game.data.coordinates.CoordinateDim2D;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handle tracking of chunk events (e.g. loading, unloading, lighting data) for debugging purposes. Should not be
  * enabled during normal usage as events are never deleted (so memory usage grows unbounded).
  */
 public abstract class ChunkEvents {
-    private static final Map<CoordinateDim2D, List<ChunkEvent>> events = new HashMap<>();
+    private static final Map<CoordinateDim2D, List<ChunkEvent>> events = new ConcurrentHashMap<>();
 
     public ChunkEvents() { }
 
     public static void raiseEvent(CoordinateDim2D pos, String event) {
         if (!Config.trackEvents()) { return; }
 
-        events.computeIfAbsent(pos, k -> new ArrayList<>()).add(new ChunkEvent(null, event));
+        events.computeIfAbsent(pos, k -> new CopyOnWriteArrayList<>()).add(new ChunkEvent(null, event));
     }
 
     public void raiseEvent(String event) {
         if (!Config.trackEvents()) { return; }
 
-        events.computeIfAbsent(getLocation(), k -> new ArrayList<>()).add(new ChunkEvent(this, event));
+        events.computeIfAbsent(getLocation(), k -> new CopyOnWriteArrayList<>()).add(new ChunkEvent(this, event));
     }
 
     protected void printEventLog() {
@@ -2,6 +2,7 @@ package game.data.chunk;
 
 import config.Config;
 import config.Option;
+import config.Session;
 import config.Version;
 import config.VersionReporter;
 import game.data.chunk.version.*;
@@ -9,6 +10,7 @@ import game.data.coordinates.Coordinate3D;
 import game.data.coordinates.CoordinateDim2D;
 import game.data.WorldManager;
 import packets.DataTypeProvider;
+import proxy.metrics.Metrics;
 import se.llbit.nbt.NamedTag;
 import se.llbit.nbt.SpecificTag;
 
@@ -17,25 +19,59 @@ import java.util.concurrent.*;
 
 /**
  * Class responsible for creating chunks.
+ * <p>
+ * Chunks are parsed on several threads. All work for a chunk is done on the same thread, so that the chunk itself and
+ * any updates to it are applied in the order they were received, while different chunks are parsed in parallel.
  */
 public class ChunkFactory {
+    private static final int PARSER_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+
     private Map<CoordinateDim2D, UnparsedChunk> unparsedChunks;
 
-    private ThreadPoolExecutor executor;
+    // data that arrived before its chunk, in the order it expires
+    private DelayQueue<UnparsedChunk> orphans;
+
+    private ThreadPoolExecutor[] executors;
+
+    // the executors are re-created when the factory is cleared, which may happen from any thread
+    private final Session session;
 
     public ChunkFactory() {
+        this.session = Session.current();
         clear();
+
+        Metrics.registerQueue("Chunk Parser Service", this::countQueuedChunks);
     }
 
     public void clear() {
         this.unparsedChunks = new ConcurrentHashMap<>();
+        this.orphans = new DelayQueue<>();
 
-        // same as newSingleThreadExecutor except we can observe the queue size
-        this.executor = new ThreadPoolExecutor(
-            1, 1, 0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<>(),
-            (r) -> new Thread(r, "Chunk Parser Service")
-        );
+        if (executors != null) {
+            for (ThreadPoolExecutor executor : executors) {
+                executor.shutdown();
+            }
+        }
+
+        this.executors = new ThreadPoolExecutor[PARSER_THREADS];
+        for (int i = 0; i < PARSER_THREADS; i++) {
+            String name = "Chunk Parser Service " + i;
+
+            // same as newSingleThreadExecutor except we can observe the queue size
+            executors[i] = new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                session.threadFactory(name)
+            );
+        }
+    }
+
+    /**
+     * Get the thread responsible for the given chunk.
+     */
+    private ThreadPoolExecutor executorFor(CoordinateDim2D chunkPos) {
+        int hash = chunkPos.hashCode();
+        return executors[Math.floorMod(hash ^ (hash >>> 16), executors.length)];
     }
 
     /**
@@ -84,32 +120,39 @@ public class ChunkFactory {
             return;
         }
 
-        Runnable r = () -> {
-            CoordinateDim2D chunkPos = new CoordinateDim2D(provider.readInt(), provider.readInt(), WorldManager.getInstance().getDimension());
-            getUnparsed(chunkPos).setProvider(provider);
+        // the position is read right away, as we need it to pick the thread
+        CoordinateDim2D chunkPos = new CoordinateDim2D(provider.readInt(), provider.readInt(), WorldManager.getInstance().getDimension());
+        executorFor(chunkPos).execute(() -> {
+            UnparsedChunk unparsed = getUnparsed(chunkPos);
+            unparsed.setProvider(provider);
 
-            this.parse();
-        };
+            parse(unparsed);
+            removeExpired();
+        });
+    }
 
-        if (executor != null) {
-            executor.execute(r);
-        } else {
-            r.run();
+    private void parse(UnparsedChunk unparsed) {
+        try {
+            if (readChunkDataPacket(unparsed)) {
+                unparsedChunks.remove(unparsed.location, unparsed);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.err.println("Chunk could not be parsed!");
+            unparsedChunks.remove(unparsed.location, unparsed);
         }
     }
 
-    private void parse() {
-        for (CoordinateDim2D k : unparsedChunks.keySet()) {
-            try {
-                boolean doRemove = readChunkDataPacket(unparsedChunks.get(k));
-
-                if (doRemove) {
-                    unparsedChunks.remove(k);
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                System.err.println("Chunk could not be parsed!");
-                unparsedChunks.remove(k);
+    /**
+     * Remove data that was sent for chunks that never arrived. Only expired entries are taken from the queue, so this
+     * does not need to look at the chunks that are still waiting. Entries that have chunk data by now are left alone,
+     * those are handled by the thread responsible for that chunk.
+     */
+    private void removeExpired() {
+        UnparsedChunk expired;
+        while ((expired = orphans.poll()) != null) {
+            if (expired.provider == null) {
+                unparsedChunks.remove(expired.location, expired);
             }
         }
     }
@@ -178,15 +221,22 @@ public class ChunkFactory {
 
     public void reset() {
         this.unparsedChunks.clear();
+        this.orphans.clear();
     }
 
     public void updateLight(CoordinateDim2D coords, DataTypeProvider provider) {
         UnparsedChunk unparsed = getUnparsedIfFresh(coords);
-        unparsed.lighting = provider;
+
+        // the provider is a view on the network buffer, which should not be kept alive for as long as the chunk may
+        // take to arrive
+        unparsed.lighting = provider.copy();
     }
 
-    public void runOnFactoryThread(Runnable r) {
-        executor.execute(r);
+    /**
+     * Run a task on the thread responsible for the given chunk, so that it happens after the chunk has been parsed.
+     */
+    public void runOnFactoryThread(CoordinateDim2D chunkPos, Runnable r) {
+        executorFor(chunkPos).execute(r);
     }
 
     public void unloadChunk(CoordinateDim2D coord) {
@@ -207,20 +257,25 @@ public class ChunkFactory {
         if (current == null || current.shouldUnload) {
             current = new UnparsedChunk(location);
             unparsedChunks.put(location, current);
+            orphans.add(current);
         }
 
         return current;
     }
 
     public int countQueuedChunks() {
-        return executor.getQueue().size();
+        int total = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            total += executor.getQueue().size();
+        }
+        return total;
     }
 }
 
 /**
  * Hold unparsed chunks and any separately sent data that needs to be added to it (tile entities and light data).
  */
-class UnparsedChunk {
+class UnparsedChunk implements Delayed {
     private static final long MAX_WAIT_TIME = 1000 * 10;
 
     private final long initTime;
@@ -233,8 +288,12 @@ class UnparsedChunk {
     boolean parsingInProgress;
 
     public UnparsedChunk(CoordinateDim2D location) {
+        this(location, System.currentTimeMillis());
+    }
+
+    UnparsedChunk(CoordinateDim2D location, long initTime) {
         this.location = location;
-        this.initTime = System.currentTimeMillis();
+        this.initTime = initTime;
     }
 
     public void addTileEntity(TileEntity tileEntity) {
@@ -254,6 +313,16 @@ class UnparsedChunk {
     public boolean isStale() {
         return System.currentTimeMillis() - initTime > MAX_WAIT_TIME;
     }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(initTime + MAX_WAIT_TIME - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(initTime, ((UnparsedChunk) other).initTime);
+    }
 }
 
 class TileEntity {
@@ -1,6 +1,8 @@
 package game.data.chunk;
 
+import game.data.chunk.palette.BlockRegistry;
 import game.data.chunk.palette.BlockState;
+import game.data.chunk.palette.GlobalPaletteProvider;
 import game.data.chunk.palette.SimpleColor;
 import game.data.coordinates.Coordinate3D;
 import game.data.dimension.Dimension;
@@ -29,13 +31,32 @@ public class ChunkHeightHandler {
         this.heightMapBelowBedrock = new int[Chunk.SECTION_WIDTH * Chunk.SECTION_WIDTH];
         this.heightMap = new int[Chunk.SECTION_WIDTH * Chunk.SECTION_WIDTH];
         this.caves = new List[Chunk.SECTION_WIDTH * Chunk.SECTION_WIDTH];
+
+        // every column looks at the same sections, so decode each of them only once
+        int[][] states = getSectionStates();
         for (int x = 0; x < Chunk.SECTION_WIDTH; x++) {
             for (int z = 0; z < Chunk.SECTION_WIDTH; z++) {
-                heightMapBelowBedrock[z << 4 | x] = computeHeight(x, z, true);
-                heightMap[z << 4 | x] = computeHeight(x, z, false);
-                caves[z << 4 | x] = findCaves(x, z);
+                heightMapBelowBedrock[z << 4 | x] = computeHeight(x, z, true, states);
+                heightMap[z << 4 | x] = computeHeight(x, z, false, states);
+                caves[z << 4 | x] = findCaves(x, z, states);
+            }
+        }
+    }
+
+    /**
+     * Get the block states of all sections in the chunk, indexed by section Y relative to the lowest section. Missing
+     * sections are left as null.
+     */
+    private int[][] getSectionStates() {
+        int minSection = c.getMinBlockSection();
+        int[][] states = new int[c.getMaxBlockSection() - minSection + 1][];
+        for (int sectionY = minSection; sectionY <= c.getMaxBlockSection(); sectionY++) {
+            ChunkSection cs = c.getChunkSection(sectionY);
+            if (cs != null) {
+                states[sectionY - minSection] = cs.getNumericBlockStates();
             }
         }
+        return states;
     }
 
     /**
@@ -44,6 +65,14 @@ public class ChunkHeightHandler {
      * anyway, but may contain misleading caves). We then only count blocks after we've found some air space.
      */
     private int computeHeight(int x, int z, boolean ignoredBedrockAbove) {
+        return computeHeight(x, z, ignoredBedrockAbove, null);
+    }
+
+    /**
+     * @param states the block states of each section as given by {@link #getSectionStates()}, or null to look them
+     *               up from the sections directly
+     */
+    private int computeHeight(int x, int z, boolean ignoredBedrockAbove, int[][] states) {
         // if we're in the Nether, we want to find an air block before we start counting blocks.
         boolean isNether = ignoredBedrockAbove && c.location.getDimension().equals(Dimension.NETHER);
         int topSection = isNether ? 5 : c.getMaxBlockSection();
@@ -57,7 +86,8 @@ public class ChunkHeightHandler {
                 continue;
             }
 
-            int height = cs.computeHeight(x, z, foundAir);
+            int[] sectionStates = states == null ? null : states[sectionY - c.getMinBlockSection()];
+            int height = cs.computeHeight(x, z, foundAir, sectionStates);
 
             if (height < 0) { continue; }
 
@@ -119,7 +149,7 @@ public class ChunkHeightHandler {
         return belowBedrock ? heightMapBelowBedrock[z << 4 | x] : heightMap[z << 4 | x];
     }
 
-    private List<Cave> findCaves(int x, int z) {
+    private List<Cave> findCaves(int x, int z, int[][] states) {
         int surface = heightAt(x, z);
         surface = Math.min(60, surface);
 
@@ -127,11 +157,14 @@ public class ChunkHeightHandler {
 
         int base = c.getMinBlockSection() * Chunk.SECTION_HEIGHT;
         BlockState state = null;
+        BlockRegistry globalPalette = GlobalPaletteProvider.getGlobalPalette(c.getDataVersion());
 
         Cave cave = null;
         boolean inCave = false;
         for (int y = base; y < surface; y++) {
-            BlockState curState = c.getBlockStateAt(x, y, z);
+            int[] sectionStates = states[Math.floorDiv(y, Chunk.SECTION_HEIGHT) - c.getMinBlockSection()];
+            int id = sectionStates == null ? 0 : sectionStates[ChunkSection.getBlockIndex(x, Math.floorMod(y, Chunk.SECTION_HEIGHT), z)];
+            BlockState curState = id == 0 ? null : globalPalette.getState(id);
 
             boolean isEmpty = curState == null || curState.getColor() == SimpleColor.BLACK;
             if (inCave && isEmpty) {
@@ -18,17 +18,20 @@ import se.llbit.nbt.CompoundTag;
 
 /**
  * Class to hold a 16 block tall chunk section.
+ * <p>
+ * The blocks and the palette they refer to are kept together in a {@link BlockData} snapshot, which is never changed
+ * once published. Readers such as the save thread and image generation take the current snapshot and work on it
+ * without locking. Writers build new arrays and swap in a new snapshot, they only lock against each other.
  */
 public abstract class ChunkSection {
+    private static final BlockLocationEncoder LOCATION_ENCODER = new BlockLocationEncoder();
+
     protected final Chunk chunk;
 
-    protected long[] blocks;
+    private volatile BlockData data;
     protected byte[] blockLight;
     protected byte[] skyLight;
     protected byte y;
-    protected Palette palette;
-
-    BlockLocationEncoder locationHelper = new BlockLocationEncoder();
 
     public int getDataVersion() {
         return chunk.getDataVersion();
@@ -37,16 +40,37 @@ public abstract class ChunkSection {
     public ChunkSection(byte y, Palette palette, Chunk chunk) {
         this.chunk = chunk;
         this.y = y;
-        this.palette = palette;
+        this.data = new BlockData(null, palette);
     }
 
     protected BlockLocationEncoder getLocationEncoder() {
-        return this.locationHelper;
+        return LOCATION_ENCODER;
     }
 
     public ChunkSection(int sectionY, Chunk chunk) {
         this.y = (byte) sectionY;
         this.chunk = chunk;
+        this.data = new BlockData(null, null);
+    }
+
+    /**
+     * The current blocks and palette. Callers that need both should get them from the same snapshot, as the fields
+     * of the section may be replaced at any time.
+     */
+    protected BlockData getData() {
+        return data;
+    }
+
+    protected Palette getPalette() {
+        return data.palette();
+    }
+
+    protected long[] getBlocks() {
+        return data.blocks();
+    }
+
+    protected synchronized void setPalette(Palette palette) {
+        this.data = new BlockData(data.blocks(), palette);
     }
 
     public void setSkyLight(byte[] skyLight) {
@@ -57,8 +81,8 @@ public abstract class ChunkSection {
         this.blockLight = blockLight;
     }
 
-    public void setBlocks(long[] blocks) {
-        this.blocks = blocks;
+    public synchronized void setBlocks(long[] blocks) {
+        this.data = new BlockData(blocks, data.palette());
     }
 
     /**
@@ -92,10 +116,18 @@ public abstract class ChunkSection {
     }
 
     public int computeHeight(int x, int z, MutableBoolean foundAir) {
+        return computeHeight(x, z, foundAir, null);
+    }
+
+    /**
+     * @param states the block states of this section as given by {@link #getNumericBlockStates()}, or null to look
+     *               them up one by one
+     */
+    public int computeHeight(int x, int z, MutableBoolean foundAir, int[] states) {
         BlockRegistry globalPalette = GlobalPaletteProvider.getGlobalPalette(getDataVersion());
 
         for (int y = 15; y >= 0 ; y--) {
-            int blockStateId = getNumericBlockStateAt(x, y, z);
+            int blockStateId = states == null ? getNumericBlockStateAt(x, y, z) : states[getBlockIndex(x, y, z)];
 
             BlockState state = globalPalette.getState(blockStateId);
 
@@ -113,32 +145,66 @@ public abstract class ChunkSection {
     }
 
     public int getNumericBlockStateAt(int x, int y, int z) throws IllegalArgumentException {
-        return palette.stateFromId(getPaletteIndex(x, y, z));
+        BlockData data = this.data;
+        return data.palette().stateFromId(getPaletteIndex(data, x, y, z));
     }
 
     public int getPaletteIndex(int x, int y, int z) throws IllegalArgumentException {
-        return getPaletteIndex(x, y, z, palette.getBitsPerBlock());
+        return getPaletteIndex(data, x, y, z);
+    }
+
+    /**
+     * Get the block state of every block in the section, indexed by {@link #getBlockIndex}. Code that looks at all
+     * blocks should use this instead of getting them one at a time.
+     */
+    public int[] getNumericBlockStates() throws IllegalArgumentException {
+        BlockData data = this.data;
+        int[] states = getPaletteIndices(data);
+        for (int i = 0; i < states.length; i++) {
+            states[i] = data.palette().stateFromId(states[i]);
+        }
+        return states;
+    }
+
+    /**
+     * Unpack the palette index of every block in the section at once, indexed by {@link #getBlockIndex}.
+     */
+    public int[] getPaletteIndices() throws IllegalArgumentException {
+        return getPaletteIndices(data);
+    }
+
+    private int[] getPaletteIndices(BlockData data) throws IllegalArgumentException {
+        if (data.blocks() == null) {
+            throw new IllegalArgumentException("Block array is null XD");
+        }
+
+        int[] indices = new int[Chunk.SECTION_HEIGHT * Chunk.SECTION_WIDTH * Chunk.SECTION_WIDTH];
+        getLocationEncoder().unpack(data.blocks(), data.palette().getBitsPerBlock(), indices);
+        return indices;
     }
 
-    private synchronized int getPaletteIndex(int x, int y, int z, int bitsPerBlock) throws IllegalArgumentException {
+    private int getPaletteIndex(BlockData data, int x, int y, int z) throws IllegalArgumentException {
+        long[] blocks = data.blocks();
         if (blocks == null) {
             throw new IllegalArgumentException("Block array is null XD");
         }
 
+        int bitsPerBlock = data.palette().getBitsPerBlock();
         if (blocks.length == 0 || bitsPerBlock == 0) {
             return 0;
         }
 
-        return getLocationEncoder().setTo(x, y, z, bitsPerBlock).fetch(blocks);
+        return getLocationEncoder().fetch(blocks, x, y, z, bitsPerBlock);
     }
 
     public void write(PacketBuilder packet) {
+        BlockData data = this.data;
         packet.writeShort(4096);
 
-        palette.write(packet);
+        data.palette().write(packet);
 
-        packet.writeVarInt(blocks.length);
-        packet.writeLongArray(blocks);
+        packet.writeVarInt(data.blocks().length);
+        packet.writeLongArray(data.blocks());
     }
 
     @Override
@@ -155,72 +221,134 @@ public abstract class ChunkSection {
 
     @Override
     public int hashCode() {
-        int result = Arrays.hashCode(blocks);
+        BlockData data = this.data;
+        int result = Arrays.hashCode(data.blocks());
         result = 31 * result + (int) y;
-        result = 31 * result + (palette != null ? palette.hashCode() : 0);
+        result = 31 * result + (data.palette() != null ? data.palette().hashCode() : 0);
         return result;
     }
 
-    public synchronized void setBlockAt(Coordinate3D coords, int blockStateId) {
-        int index = palette.getIndexFor(this, blockStateId);
-
-        getLocationEncoder().setTo(
-                coords.getX(), coords.getY(), coords.getZ(),
-                palette.getBitsPerBlock()
-        );
-        getLocationEncoder().write(blocks, index);
-        WorldManager.getInstance().touchChunk(chunk);
+    /**
+     * Change a single block. The current block data is not modified, instead the blocks are copied (re-packed if the
+     * palette grows past its bits per block) and the new snapshot replaces the old one. Copying at most a few
+     * kilobytes is cheap next to handling the block change packet itself, but packets that change many blocks should
+     * use {@link #setBlocksAt} so the section is only copied once.
+     */
+    public void setBlockAt(Coordinate3D coords, int blockStateId) {
+        setBlocksAt(new Coordinate3D[] { coords }, new int[] { blockStateId });
     }
 
     /**
-     * When the bits per block increases, we must rewrite the blocks array.
+     * Change a number of blocks at once. Like {@link #setBlockAt}, this publishes a new snapshot, but the block data
+     * is only copied once for all the changes.
+     * @param coords section-local coordinates of the blocks
+     * @param blockStateIds the new state of each block, in the same order
      */
-    public synchronized void resizeBlocksIfRequired(int newBitsPerBlock) {
-        int newSize = newBitsPerBlock * 64;
-        long[] newBlocks = new long[newSize];
+    public synchronized void setBlocksAt(Coordinate3D[] coords, int[] blockStateIds) {
+        BlockData current = this.data;
+        Palette palette = current.palette();
+        boolean paletteCopied = false;
+
+        int[] indices = new int[blockStateIds.length];
+        for (int i = 0; i < blockStateIds.length; i++) {
+            int index = palette.indexOf(blockStateIds[i]);
+            if (index < 0 && !paletteCopied) {
+                index = palette.size();
+                palette = palette.withState(blockStateIds[i]);
+                paletteCopied = true;
+            } else if (index < 0) {
+                // the copy is not published yet, so it can be extended in place
+                index = palette.getIndexFor(blockStateIds[i]);
+            }
+            indices[i] = index;
+        }
 
-        if (blocks == null) {
-            this.blocks = newBlocks;
+        if (!paletteCopied && palette.getBitsPerBlock() == 0) {
+            // single value palette that already has this state
             return;
         }
 
-        copyBlocks(newBlocks, newBitsPerBlock);
+        int bitsPerBlock = palette.getBitsPerBlock();
+        long[] blocks = copyBlocks(current, bitsPerBlock);
+        for (int i = 0; i < coords.length; i++) {
+            getLocationEncoder().write(blocks, coords[i].getX(), coords[i].getY(), coords[i].getZ(), bitsPerBlock, indices[i]);
+        }
+
+        this.data = new BlockData(blocks, palette);
+        WorldManager.getInstance().touchChunk(chunk);
     }
 
-    public synchronized void copyBlocks(long[] newBlocks, int newBitsPerBlock) {
-        BlockLocationEncoder locationHelper = getLocationEncoder();
-        for (int x = 0; x < 16; x++) {
-            for (int y = 0; y < 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    int index = getPaletteIndex(x, y, z);
+    /**
+     * Replace all blocks at once, with a new palette containing only the given states. This is the counterpart of
+     * {@link #getNumericBlockStates()}.
+     */
+    public synchronized void setNumericBlockStates(int[] states) {
+        // the palette is not published until it's complete, so it can be built in place
+        Palette palette = Palette.empty();
+        int[] indices = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            indices[i] = palette.getIndexFor(states[i]);
+        }
 
-                    locationHelper.setTo(x, y, z, newBitsPerBlock).write(newBlocks, index);
-                }
-            }
+        long[] blocks = new long[blockArrayLength(palette.getBitsPerBlock())];
+        getLocationEncoder().pack(indices, palette.getBitsPerBlock(), blocks);
+
+        this.data = new BlockData(blocks, palette);
+    }
+
+    /**
+     * The number of longs needed to store the blocks with the given number of bits per block.
+     */
+    protected int blockArrayLength(int bitsPerBlock) {
+        return bitsPerBlock * 64;
+    }
+
+    /**
+     * Create a copy of the blocks that uses the given number of bits per block. If the current array does not match
+     * its palette, which some servers send for empty sections, we assume the section was empty and start over.
+     */
+    private long[] copyBlocks(BlockData current, int newBitsPerBlock) {
+        long[] blocks = current.blocks();
+        int bitsPerBlock = current.palette().getBitsPerBlock();
+
+        if (blocks == null || blocks.length == 0 || blocks.length != blockArrayLength(bitsPerBlock)) {
+            return new long[blockArrayLength(newBitsPerBlock)];
+        }
+
+        if (bitsPerBlock == newBitsPerBlock) {
+            return blocks.clone();
         }
-        this.blocks = newBlocks;
+
+        long[] newBlocks = new long[blockArrayLength(newBitsPerBlock)];
+        getLocationEncoder().pack(getPaletteIndices(current), newBitsPerBlock, newBlocks);
+        return newBlocks;
     }
 
     public byte[] getSkyLight() { return skyLight; }
     public byte[] getBlockLight() { return blockLight; }
 
-    public void resetBlocks() {
-        this.blocks = new long[256];
-        this.palette = Palette.empty();
+    public synchronized void resetBlocks() {
+        this.data = new BlockData(new long[256], Palette.empty());
     }
 
     public void copyTo(ChunkSection other) {
-        other.blocks = this.blocks;
-        other.palette = this.palette;
+        other.data = this.data;
     }
 
     @Override
     public String toString() {
+        BlockData data = this.data;
         return "ChunkSection{" +
-            "blocks=[" + blocks.length +
+            "blocks=[" + data.blocks().length +
             "], y=" + y +
-            ", palette=" + palette +
+            ", palette=" + data.palette() +
             '}';
     }
+
+    /**
+     * The blocks of a section together with the palette their indices refer to. Neither is changed after the
+     * snapshot is published.
+     */
+    protected record BlockData(long[] blocks, Palette palette) { }
 }
 
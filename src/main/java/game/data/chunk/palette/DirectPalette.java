@@ -23,6 +23,21 @@ public class DirectPalette extends Palette {
         return index;
     }
 
+    @Override
+    public int indexOf(int blockStateId) {
+        return blockStateId;
+    }
+
+    @Override
+    public int getIndexFor(int blockStateId) {
+        return blockStateId;
+    }
+
+    @Override
+    public Palette withState(int blockStateId) {
+        return this;
+    }
+
     @Override
     public int getBitsPerBlock() {
         return bitsPerBlock;
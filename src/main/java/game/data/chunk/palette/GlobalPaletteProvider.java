@@ -5,8 +5,9 @@ import game.data.registries.RegistryLoader;
 import game.protocol.Protocol;
 import game.protocol.ProtocolVersionHandler;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import se.llbit.nbt.CompoundTag;
 
@@ -17,7 +18,7 @@ import se.llbit.nbt.CompoundTag;
 public final class GlobalPaletteProvider {
     private GlobalPaletteProvider() { }
 
-    private static HashMap<Integer, BlockRegistry> palettes = new HashMap<>();
+    private static final Map<Integer, BlockRegistry> palettes = new ConcurrentHashMap<>();
     private static Queue<BlockState> uninitialised;
 
     /**
@@ -43,9 +44,15 @@ public final class GlobalPaletteProvider {
     /**
      * To request a palette we make use of the registry loader, which needs a textual game version. The protocol
      * version handler has this value for us. The registry loader will load it either from a previously generated
-     * report, or it will download the relevant Minecraft version and generate it.
+     * report, or it will download the relevant Minecraft version and generate it. Chunks are parsed on several threads,
+     * so this is synchronized to make sure the palette is only generated once.
      */
-    private static BlockRegistry requestPalette(int dataVersion) {
+    private static synchronized BlockRegistry requestPalette(int dataVersion) {
+        BlockRegistry existing = palettes.get(dataVersion);
+        if (existing != null) {
+            return existing;
+        }
+
         Protocol version = ProtocolVersionHandler.getInstance().getProtocolByDataVersion(dataVersion);
         try {
             BlockRegistry p = RegistryLoader.forVersion(version.getVersion()).generateGlobalPalette();
@@ -4,8 +4,6 @@ import game.data.WorldManager;
 
 import java.util.*;
 
-import game.data.chunk.ChunkSection;
-
 import java.util.stream.Stream;
 
 import game.data.dimension.Biome;
@@ -17,16 +15,23 @@ import se.llbit.nbt.SpecificTag;
 
 /**
  * Class to hold a palette of a chunk.
+ * <p>
+ * The states are kept in an array that may be larger than the palette, so that adding states one by one only needs
+ * a new array every time the size doubles. Looking up the index of a state is done through a hash table that is
+ * built the first time it's needed.
  */
 public class Palette {
     private int bitsPerBlock;
     private int[] palette;
+    private int size;
+    private volatile StateIndex index;
     Registry registry;
     PaletteType type = PaletteType.BLOCKS;
 
     protected Palette() {
         // palette needs initializing
         this.palette = new int[1];
+        this.size = 1;
         this.registry = GlobalPaletteProvider.getGlobalPalette();
         if (this.registry == null) {
             System.out.println("No state provider available: GlobalPaletteProvider.getGlobalPalette()");
@@ -36,16 +41,30 @@ public class Palette {
     private Palette(int bitsPerBlock, int[] palette) {
         this.bitsPerBlock = bitsPerBlock;
         this.palette = palette;
+        this.size = palette.length;
         this.registry = GlobalPaletteProvider.getGlobalPalette();
         synchronizeBitsPerBlock();
     }
 
     Palette(int[] arr) {
         this.palette = arr;
+        this.size = arr.length;
         this.bitsPerBlock = computeBitsPerBlock(Math.max(0, arr.length - 1));
         this.registry = GlobalPaletteProvider.getGlobalPalette();
     }
 
+    /**
+     * Copy of the given palette with a different set of states. The bits per block only ever grow, so that palettes
+     * sent with more bits than needed keep matching their block data.
+     */
+    private Palette(Palette original, int[] palette) {
+        this.palette = palette;
+        this.size = palette.length;
+        this.registry = original.registry;
+        this.type = original.type;
+        this.bitsPerBlock = Math.max(original.bitsPerBlock, computeBitsPerBlock(palette.length - 1));
+    }
+
     public static Palette biomes(int dataVersion, ListTag palette) {
         if (palette.size() == 1) {
             return new SingleValuePalette(PaletteType.BIOMES, (SpecificTag) palette.get(0));
@@ -141,10 +160,9 @@ public class Palette {
             throw new IllegalArgumentException("Bits per block may not be more than 16. Given: " + this.bitsPerBlock);
         }
 
-        while (this.bitsPerBlock > computeBitsPerBlock(palette.length - 1)) {
-            int[] newPalette = new int[palette.length + 1];
-            System.arraycopy(palette, 0, newPalette, 0, palette.length);
-            this.palette = newPalette;
+        while (this.bitsPerBlock > computeBitsPerBlock(size - 1)) {
+            this.palette = Arrays.copyOf(palette, size + 1);
+            this.size++;
         }
     }
 
@@ -160,6 +178,7 @@ public class Palette {
         }
 
         this.palette = new int[nbt.size()];
+        this.size = nbt.size();
         this.bitsPerBlock = computeBitsPerBlock(nbt.size() - 1);
 
         for (int i = 0; i < nbt.size(); i++) {
@@ -171,7 +190,7 @@ public class Palette {
     }
 
     protected void recomputeBitsPerBlock() {
-        this.bitsPerBlock = computeBitsPerBlock(this.palette.length - 1);
+        this.bitsPerBlock = computeBitsPerBlock(size - 1);
     }
 
     private int computeBitsPerBlock(int maxIndex) {
@@ -222,10 +241,10 @@ public class Palette {
         if (bitsPerBlock > 8) {
             return index;
         }
-        if (palette.length == 0) {
+        if (size == 0) {
             return 0;
         }
-        if (index >= palette.length) {
+        if (index >= size) {
             return 0;
         }
 
@@ -233,7 +252,7 @@ public class Palette {
     }
 
     public boolean isEmpty() {
-        return palette.length == 0 || (palette.length == 1 && palette[0] == 0);
+        return size == 0 || (size == 1 && palette[0] == 0);
     }
 
     /**
@@ -246,7 +265,7 @@ public class Palette {
             throw new UnsupportedOperationException("Cannot create palette NBT without a block registry.");
         }
 
-        for (int i : palette) {
+        for (int i : getPalette()) {
             State state = registry.getState(i);
             if (state == null) { state = registry.getDefaultState(); }
 
@@ -262,8 +281,8 @@ public class Palette {
 
     public void write(PacketBuilder packet) {
         packet.writeByte((byte) bitsPerBlock);
-        packet.writeVarInt(palette.length);
-        packet.writeVarIntArray(palette);
+        packet.writeVarInt(size);
+        packet.writeVarIntArray(getPalette());
     }
 
     @Override
@@ -274,13 +293,13 @@ public class Palette {
         Palette palette1 = (Palette) o;
 
         if (bitsPerBlock != palette1.bitsPerBlock) return false;
-        return Arrays.equals(palette, palette1.palette);
+        return Arrays.equals(palette, 0, size, palette1.palette, 0, palette1.size);
     }
 
     @Override
     public int hashCode() {
         int result = bitsPerBlock;
-        result = 31 * result + Arrays.hashCode(palette);
+        result = 31 * result + Arrays.hashCode(getPalette());
         return result;
     }
 
@@ -288,49 +307,71 @@ public class Palette {
     public String toString() {
         return "Palette{" +
                 "bitsPerBlock=" + bitsPerBlock +
-                ", palette(" + palette.length + ")=" + Arrays.toString(palette) +
+                ", palette(" + size + ")=" + Arrays.toString(getPalette()) +
                 '}';
     }
 
-    public int getIndexFor(ChunkSection section, int blockStateId) {
-        for (int i = 0; i < palette.length; i++) {
-            if (palette[i] == blockStateId) {
-                return i;
-            }
+    /**
+     * Get the index of the given state, adding it to the palette if needed. This changes the palette, so it should
+     * only be used while building a new one. Palettes that are in use by a chunk section are copied using
+     * {@link #withState} instead.
+     */
+    public int getIndexFor(int blockStateId) {
+        int found = indexOf(blockStateId);
+        if (found >= 0) {
+            return found;
         }
 
-        int[] newPalette = new int[palette.length + 1];
-        System.arraycopy(palette, 0, newPalette, 0, palette.length);
-        newPalette[palette.length] = blockStateId;
-        this.palette = newPalette;
-
-        if (section != null) {
-            resize(section, bitsPerBlock);
+        if (size == palette.length) {
+            this.palette = Arrays.copyOf(palette, Math.max(4, size * 2));
         }
+        palette[size] = blockStateId;
+        getIndex().add(palette, size);
+        size++;
 
-
-        return palette.length - 1;
+        this.bitsPerBlock = Math.max(bitsPerBlock, computeBitsPerBlock(size - 1));
+        return size - 1;
     }
 
-    public int[] getPalette() {
-        return palette;
+    /**
+     * Get the index of the given state.
+     * @return the index, or -1 if the state is not in the palette
+     */
+    public int indexOf(int blockStateId) {
+        return getIndex().find(palette, blockStateId);
     }
 
-    private void resize(ChunkSection section, int oldBpp) {
-        int newBitsPerBlock = computeBitsPerBlock(palette.length - 1);
-        if (oldBpp != newBitsPerBlock) {
-            section.resizeBlocksIfRequired(newBitsPerBlock);
-            this.bitsPerBlock = newBitsPerBlock;
+    private StateIndex getIndex() {
+        StateIndex index = this.index;
+        if (index == null) {
+            index = new StateIndex(palette, size);
+            this.index = index;
         }
+        return index;
+    }
+
+    /**
+     * Create a copy of this palette with the given state added at the end, at index {@link #size()}. This palette
+     * is not changed, so that it can still be read while the copy is being used to write the new block data.
+     */
+    public Palette withState(int blockStateId) {
+        int[] newPalette = Arrays.copyOf(palette, size + 1);
+        newPalette[size] = blockStateId;
+
+        return new Palette(this, newPalette);
+    }
+
+    public int[] getPalette() {
+        return size == palette.length ? palette : Arrays.copyOf(palette, size);
     }
 
 
     public int size() {
-        return palette.length;
+        return size;
     }
 
     public Stream<State> values() {
-        return Arrays.stream(palette).mapToObj(el -> registry.getState(el));
+        return Arrays.stream(palette, 0, size).mapToObj(el -> registry.getState(el));
     }
 }
 
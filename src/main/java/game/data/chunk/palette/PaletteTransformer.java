@@ -1,5 +1,6 @@
 package game.data.chunk.palette;
 
+import game.data.chunk.ChunkSection;
 import game.data.chunk.version.ChunkSection_1_16;
 import game.data.chunk.version.encoder.BlockLocationEncoder;
 import java.util.Arrays;
@@ -27,31 +28,31 @@ public class PaletteTransformer {
             return data;
         }
 
-        // first add every block in the chunk to the new palette
-        for (int z = 0; z < 16; z++) {
-            for (int x = 0; x < 16; x++) {
-                for (int y = 0; y < 16; y++) {
-                    locationEncoder.setTo(x, y, z, oldPalette.getBitsPerBlock());
-                    newPalette.getIndexFor(null, locationEncoder.fetch(data));
+        boolean biomes = oldPalette.type == PaletteType.BIOMES;
+        int[] values = new int[biomes ? 64 : 4096];
+        locationEncoder.unpack(data, oldPalette.getBitsPerBlock(), values);
+
+        // first add every block in the chunk to the new palette, in the same order as before so the palette does not
+        // change, then replace the values by their new index
+        if (!biomes) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    for (int y = 0; y < 16; y++) {
+                        newPalette.getIndexFor(values[ChunkSection.getBlockIndex(x, y, z)]);
+                    }
                 }
             }
         }
-
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newPalette.getIndexFor(values[i]);
+        }
         newPalette.recomputeBitsPerBlock();
 
-        // copy all blocks to the new palette
-        long[] newData = new long[ChunkSection_1_16.longsRequired(newPalette.getBitsPerBlock())];
-        for (int z = 0; z < 16; z++) {
-            for (int x = 0; x < 16; x++) {
-                for (int y = 0; y < 16; y++) {
-                    locationEncoder.setTo(x, y, z, oldPalette.getBitsPerBlock());
-                    int index = newPalette.getIndexFor(null, locationEncoder.fetch(data));
-
-                    locationEncoder.setTo(x, y, z, newPalette.getBitsPerBlock());
-                    locationEncoder.write(newData, index);
-                }
-            }
-        }
+        int bitsPerBlock = newPalette.getBitsPerBlock();
+        long[] newData = new long[biomes
+                ? ChunkSection_1_16.longsRequiredBiomes(bitsPerBlock)
+                : ChunkSection_1_16.longsRequired(bitsPerBlock)];
+        locationEncoder.pack(values, bitsPerBlock, newData);
         return newData;
     }
 
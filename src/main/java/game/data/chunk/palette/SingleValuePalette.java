@@ -2,7 +2,6 @@ package game.data.chunk.palette;
 
 import java.util.List;
 
-import game.data.chunk.ChunkSection;
 import packets.builder.PacketBuilder;
 import se.llbit.nbt.SpecificTag;
 
@@ -46,10 +45,24 @@ public class SingleValuePalette extends Palette {
     }
 
     @Override
-    public int getIndexFor(ChunkSection section, int blockStateId) {
+    public int getIndexFor(int blockStateId) {
         return 0;
     }
 
+    @Override
+    public int indexOf(int blockStateId) {
+        return blockStateId == val ? 0 : -1;
+    }
+
+    /**
+     * A single value palette cannot hold a second state, so this creates a normal palette with both states. Index 0
+     * still refers to the original value, so empty block data keeps its meaning.
+     */
+    @Override
+    public Palette withState(int blockStateId) {
+        return asNormalPalette().withState(blockStateId);
+    }
+
     @Override
     public int size() {
         return 1;
@@ -0,0 +1,84 @@
+package game.data.chunk.palette;
+
+/**
+ * Reverse lookup from a state to its index in a palette, so that adding blocks does not need to scan the palette.
+ * This is an open addressing hash table of primitive ints. The slots hold the palette index plus one, so that zero
+ * can mark an empty slot, and the state itself is looked up in the palette array when comparing.
+ */
+class StateIndex {
+    private int[] slots;
+    private int count;
+
+    StateIndex(int[] palette, int size) {
+        this.slots = new int[capacityFor(size)];
+
+        // palettes may contain a state more than once, the first one is the one that's used
+        for (int i = 0; i < size; i++) {
+            if (find(palette, palette[i]) < 0) {
+                insert(palette[i], i);
+            }
+        }
+    }
+
+    /**
+     * Get the index of the given state.
+     * @param palette the palette array the indices refer to
+     * @return the index, or -1 if the state is not in the palette
+     */
+    int find(int[] palette, int state) {
+        int mask = slots.length - 1;
+        for (int slot = hash(state) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (palette[entry - 1] == state) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Add a state that was just appended to the palette. The state should not already be in the palette.
+     */
+    void add(int[] palette, int index) {
+        if ((count + 1) * 2 > slots.length) {
+            rehash(palette);
+        }
+        insert(palette[index], index);
+    }
+
+    private void insert(int state, int index) {
+        int mask = slots.length - 1;
+        int slot = hash(state) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+        count++;
+    }
+
+    private void rehash(int[] palette) {
+        int[] old = slots;
+        this.slots = new int[old.length * 2];
+        this.count = 0;
+
+        for (int entry : old) {
+            if (entry != 0) {
+                insert(palette[entry - 1], entry - 1);
+            }
+        }
+    }
+
+    /**
+     * Keep the table at most half full, with a size that is a power of two.
+     */
+    private static int capacityFor(int size) {
+        return Math.max(8, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+
+    static int hash(int state) {
+        int h = state * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -34,9 +34,10 @@ public class ChunkSection_1_12 extends ChunkSection {
     public ChunkSection_1_12(int sectionY, Tag nbt, Chunk chunk) {
         super(sectionY, chunk);
         this.blockStates = new int[16][16][16];
-        this.palette = new DirectPalette();
+        Palette palette = new DirectPalette();
+        this.setPalette(palette);
 
-        long[] blocks = encodeBlocks(nbt.get("Blocks").byteArray(), nbt.get("Data").byteArray(), this.palette);
+        long[] blocks = encodeBlocks(nbt.get("Blocks").byteArray(), nbt.get("Data").byteArray(), palette);
 
         this.setBlocks(blocks);
         this.setBlockLight(nbt.get("BlockLight").byteArray());
@@ -49,11 +50,12 @@ public class ChunkSection_1_12 extends ChunkSection {
 
         if (blocks.length == 0) { return; }
 
+        Palette palette = getPalette();
+        int[] indices = getPaletteIndices();
         for (int y = 0; y < Chunk.SECTION_HEIGHT; y++) {
             for (int z = 0; z < Chunk.SECTION_WIDTH; z++) {
                 for (int x = 0; x < Chunk.SECTION_WIDTH; x++) {
-                    int data = getPaletteIndex(x, y, z);
-                    this.blockStates[x][y][z] = palette.stateFromId(data);
+                    this.blockStates[x][y][z] = palette.stateFromId(indices[getBlockIndex(x, y, z)]);
                 }
             }
         }
@@ -180,6 +182,19 @@ public class ChunkSection_1_12 extends ChunkSection {
         return blockStates[x][y][z];
     }
 
+    @Override
+    public int[] getNumericBlockStates() {
+        int[] states = new int[4096];
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    states[getBlockIndex(x, y, z)] = blockStates[x][y][z];
+                }
+            }
+        }
+        return states;
+    }
+
     @Override
     public int hashCode() {
         int result = super.hashCode();
@@ -188,9 +203,11 @@ public class ChunkSection_1_12 extends ChunkSection {
     }
 
     @Override
-    public void setBlockAt(Coordinate3D coords, int blockStateId) {
-        super.setBlockAt(coords, blockStateId);
-        this.blockStates[coords.getX()][coords.getY()][coords.getZ()] = blockStateId;
+    public void setBlocksAt(Coordinate3D[] coords, int[] blockStateIds) {
+        super.setBlocksAt(coords, blockStateIds);
+        for (int i = 0; i < coords.length; i++) {
+            this.blockStates[coords[i].getX()][coords[i].getY()][coords[i].getZ()] = blockStateIds[i];
+        }
     }
 
     @Override
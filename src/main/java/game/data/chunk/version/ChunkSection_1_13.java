@@ -6,7 +6,6 @@ import game.data.chunk.Chunk;
 import game.data.chunk.ChunkSection;
 import game.data.chunk.palette.DirectPalette;
 import game.data.chunk.palette.Palette;
-import game.data.coordinates.Coordinate3D;
 import game.data.dimension.Dimension;
 import packets.builder.PacketBuilder;
 import se.llbit.nbt.CompoundTag;
@@ -34,15 +33,16 @@ public class ChunkSection_1_13 extends ChunkSection {
         this.setBlocks(nbt.get("BlockStates").longArray());
         this.setBlockLight(nbt.get("BlockLight").byteArray());
         this.setSkyLight(nbt.get("SkyLight").byteArray());
-        this.palette = new Palette(getDataVersion(), nbt.get("Palette").asList());
+        this.setPalette(new Palette(getDataVersion(), nbt.get("Palette").asList()));
     }
 
     @Override
     public void write(PacketBuilder packet) {
-        palette.write(packet);
+        BlockData data = getData();
+        data.palette().write(packet);
 
-        packet.writeVarInt(blocks.length);
-        packet.writeLongArray(blocks);
+        packet.writeVarInt(data.blocks().length);
+        packet.writeLongArray(data.blocks());
 
         packet.writeByteArray(this.blockLight);
 
@@ -53,12 +53,13 @@ public class ChunkSection_1_13 extends ChunkSection {
 
     @Override
     protected void addNbtTags(CompoundTag map) {
-        if (palette instanceof DirectPalette) {
+        if (getPalette() instanceof DirectPalette) {
             convertToIndirectPalette();
         }
-        
-        map.add("BlockStates", new LongArrayTag(blocks));
-        map.add("Palette", createPalette());
+
+        BlockData data = getData();
+        map.add("BlockStates", new LongArrayTag(data.blocks()));
+        map.add("Palette", createPalette(data.palette()));
     }
 
     /**
@@ -66,22 +67,11 @@ public class ChunkSection_1_13 extends ChunkSection {
      * blocks need to be converted.
      */
     private void convertToIndirectPalette() {
-        ChunkSection newSection = this.chunk.createNewChunkSection(this.y, Palette.empty());
-        newSection.setBlocks(new long[256]);
-
-        for (int y = 0; y < 16; y++) {
-            for (int z = 0; z < 16; z++) {
-                for (int x = 0; x < 16; x++) {
-                    newSection.setBlockAt(new Coordinate3D(x, y, z), getNumericBlockStateAt(x, y, z));
-                }
-            }
-        }
-
-        newSection.copyTo(this);
+        setNumericBlockStates(getNumericBlockStates());
     }
 
 
-    private ListTag createPalette() {
+    private ListTag createPalette(Palette palette) {
         return new ListTag(Tag.TAG_COMPOUND, palette.toNbt());
     }
 
@@ -95,6 +85,6 @@ public class ChunkSection_1_13 extends ChunkSection {
         ChunkSection_1_13 that = (ChunkSection_1_13) o;
 
         if (getY() != that.getY()) return false;
-        return Arrays.equals(blocks, that.blocks);
+        return Arrays.equals(getBlocks(), that.getBlocks());
     }
 }
@@ -18,10 +18,11 @@ public class ChunkSection_1_15 extends ChunkSection_1_14 {
 
     @Override
     public void write(PacketBuilder packet) {
+        BlockData data = getData();
         packet.writeShort(4096);
-        palette.write(packet);
+        data.palette().write(packet);
 
-        packet.writeVarInt(blocks.length);
-        packet.writeLongArray(blocks);
+        packet.writeVarInt(data.blocks().length);
+        packet.writeLongArray(data.blocks());
     }
 }
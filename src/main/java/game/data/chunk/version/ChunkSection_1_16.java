@@ -8,11 +8,11 @@ import game.data.chunk.version.encoder.BlockLocationEncoder_1_16;
 import se.llbit.nbt.Tag;
 
 public class ChunkSection_1_16 extends ChunkSection_1_15 {
-    private final BlockLocationEncoder blockLocationEncoder = new BlockLocationEncoder_1_16();
+    private static final BlockLocationEncoder LOCATION_ENCODER = new BlockLocationEncoder_1_16();
 
     @Override
     protected BlockLocationEncoder getLocationEncoder() {
-        return blockLocationEncoder;
+        return LOCATION_ENCODER;
     }
 
     public ChunkSection_1_16(byte y, Palette palette, Chunk chunk) {
@@ -23,25 +23,9 @@ public class ChunkSection_1_16 extends ChunkSection_1_15 {
         super(sectionY, nbt, chunk);
     }
 
-    /**
-     * When the bits per block increases, we must rewrite the blocks array.
-     */
     @Override
-    public synchronized void resizeBlocksIfRequired(int newBitsPerBlock) {
-        int newSize = longsRequired(newBitsPerBlock);
-
-        // if blocks is empty or isn't the correct size, no need to copy
-        if (blocks == null || blocks.length != longsRequired(palette.getBitsPerBlock())) {
-            this.blocks = new long[newSize];
-            return;
-        }
-
-        // if the length didn't change we don't have to do anything
-        if (blocks.length == newSize) {
-            return;
-        }
-
-        copyBlocks(new long[newSize], newBitsPerBlock);
+    protected int blockArrayLength(int bitsPerBlock) {
+        return longsRequired(bitsPerBlock);
     }
 
     public static int longsRequired(int bitsPerBlock) {
@@ -6,7 +6,6 @@ import game.data.chunk.palette.Palette;
 import game.data.chunk.palette.PaletteTransformer;
 import game.data.chunk.palette.PaletteType;
 import game.data.chunk.palette.SingleValuePalette;
-import game.data.coordinates.Coordinate3D;
 import java.util.Arrays;
 import java.util.List;
 import packets.builder.PacketBuilder;
@@ -43,7 +42,7 @@ public class ChunkSection_1_18 extends ChunkSection_1_16 {
                 }
             }
         });
-        this.palette = new Palette(getDataVersion(), palette);
+        this.setPalette(new Palette(getDataVersion(), palette));
 
         CompoundTag biomes = nbt.get("biomes").asCompound();
         this.biomePalette = Palette.biomes(getDataVersion(), biomes.get("palette").asList());
@@ -57,13 +56,14 @@ public class ChunkSection_1_18 extends ChunkSection_1_16 {
 
     @Override
     public void write(PacketBuilder packet) {
-        if (blockCount < 0) { blockCount = palette.isEmpty() ? 0 : 4096; }
+        BlockData data = getData();
+        if (blockCount < 0) { blockCount = data.palette().isEmpty() ? 0 : 4096; }
 
         packet.writeShort(blockCount);
-        palette.write(packet);
+        data.palette().write(packet);
 
-        packet.writeVarInt(blocks.length);
-        packet.writeLongArray(blocks);
+        packet.writeVarInt(data.blocks().length);
+        packet.writeLongArray(data.blocks());
 
         biomePalette.write(packet);
         packet.writeVarInt(biomes.length);
@@ -80,7 +80,7 @@ public class ChunkSection_1_18 extends ChunkSection_1_16 {
     }
 
     public void setBlockPalette(Palette blockPalette) {
-        this.palette = blockPalette;
+        this.setPalette(blockPalette);
     }
 
     @Override
@@ -88,7 +88,8 @@ public class ChunkSection_1_18 extends ChunkSection_1_16 {
         CompoundTag tag = new CompoundTag();
 
         tag.add("biomes", getPalettedCompound(biomePalette, Tag.TAG_STRING, biomes, PaletteType.BIOMES));
-        tag.add("block_states", getPalettedCompound(palette, Tag.TAG_COMPOUND, blocks, PaletteType.BLOCKS));
+        BlockData data = getData();
+        tag.add("block_states", getPalettedCompound(data.palette(), Tag.TAG_COMPOUND, data.blocks(), PaletteType.BLOCKS));
 
         tag.add("Y", new ByteTag(y));
         if (blockLight != null && blockLight.length > 0) {
@@ -141,38 +142,16 @@ public class ChunkSection_1_18 extends ChunkSection_1_16 {
 
         return tag;
     }
-    
-    @Override
-    public synchronized void setBlockAt(Coordinate3D coords, int blockStateId) {
-        int index = palette.getIndexFor(this, blockStateId);
-
-        if (palette instanceof SingleValuePalette svp) {
-            if (blocks == null || blocks.length == 0) {
-                resetBlocks();
-            }
-
-            this.palette = svp.asNormalPalette();
-        }
-
-        // Some servers seem to send a palette with a bits-per-block that doesn't match the number of provided longs
-        // when the section is empty. In this case we assume the section was empty before and remake the array.
-        resizeBlocksIfRequired(palette.getBitsPerBlock());
-
-        getLocationEncoder().setTo(
-                coords.getX(), coords.getY(), coords.getZ(),
-                palette.getBitsPerBlock()
-        );
-        getLocationEncoder().write(blocks, index);
-    }
 
     @Override
     public String toString() {
+        BlockData data = getData();
         return "ChunkSection{" +
             "y=" + y +
             ", biomePalette=" + biomePalette +
             ", biomes=" + Arrays.toString(biomes) +
-            ", blocks[" + blocks.length + "]" +
-            ", palette=" + palette +
+            ", blocks[" + data.blocks().length + "]" +
+            ", palette=" + data.palette() +
             ", blockLight[" + blockLight.length + "]" +
             ", skyLight[" + skyLight.length + "]" +
             '}';
@@ -170,8 +170,8 @@ public class Chunk_1_14 extends Chunk_1_13 {
         packet.writeVarInt(0);
         packet.writeVarInt(0);
 
-        packet.writeByteArray(skyLight.getValue().toArray());
-        packet.writeByteArray(blockLight.getValue().toArray());
+        packet.writeBuilder(skyLight.getValue());
+        packet.writeBuilder(blockLight.getValue());
 
         return packet;
     }
@@ -4,8 +4,7 @@ import game.data.chunk.ChunkSection;
 import game.data.chunk.palette.Palette;
 import game.data.coordinates.Coordinate3D;
 import game.data.coordinates.CoordinateDim2D;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import packets.DataTypeProvider;
 import packets.builder.PacketBuilder;
 import se.llbit.nbt.SpecificTag;
@@ -48,22 +47,22 @@ public class Chunk_1_16 extends Chunk_1_15 {
         parseLightEdgesTrusted(provider);
 
         int count = provider.readVarInt();
-        Collection<Coordinate3D> toUpdate = new ArrayList<>();
-        while (count-- > 0) {
+        Coordinate3D[] toUpdate = new Coordinate3D[count];
+        int[] blockIds = new int[count];
+        for (int i = 0; i < count; i++) {
             long blockChange = provider.readVarLong();
-            int blockId = (int) blockChange >>> 12;
+            blockIds[i] = (int) blockChange >>> 12;
 
             int x = (int) (blockChange >> 8) & 0x0F;
             int z = (int) (blockChange >> 4) & 0x0F;
             int y = (int) (blockChange     ) & 0x0F;
 
-            // since updateBlock expects the height to be [0-256], we add in the section coordinates.
-            Coordinate3D blockPos = new Coordinate3D(x, pos.getY() * 16 + y, z);
-            toUpdate.add(blockPos);
-
-            updateBlock(blockPos, blockId, true);
+            // since updateBlocks expects the height to be [0-256], we add in the section coordinates.
+            toUpdate[i] = new Coordinate3D(x, pos.getY() * 16 + y, z);
         }
-        this.getChunkHeightHandler().recomputeHeights(toUpdate);
+        updateBlocks(toUpdate, blockIds);
+
+        this.getChunkHeightHandler().recomputeHeights(Arrays.asList(toUpdate));
     }
 
     @Override
@@ -1,6 +1,7 @@
 package game.data.chunk.version;
 
 import config.Config;
+import config.Session;
 import game.data.chunk.ChunkSection;
 import game.data.coordinates.CoordinateDim2D;
 import game.protocol.Protocol;
@@ -12,18 +13,20 @@ import packets.DataTypeProvider;
 import packets.builder.PacketBuilder;
 
 public class Chunk_1_17 extends Chunk_1_16 {
-    static int minBlockSectionY = 0;
-    static int maxBlockSectionY = 15;
-    static int fullHeight;
+    // the world height of the session's current dimension when the chunk was created
+    private final int minBlockSectionY;
+    private final int maxBlockSectionY;
 
     public Chunk_1_17(CoordinateDim2D location, int version) {
         super(location, version);
+
+        Session session = Session.current();
+        this.minBlockSectionY = session.getMinBlockSectionY();
+        this.maxBlockSectionY = session.getMaxBlockSectionY();
     }
 
     public static void setWorldHeight(int min_y, int height) {
-        fullHeight = height;
-        minBlockSectionY = min_y >> 4;
-        maxBlockSectionY = minBlockSectionY + (height >> 4) - 1;
+        Session.current().setWorldHeight(min_y, height);
     }
 
     /**
@@ -112,10 +115,10 @@ public class Chunk_1_17 extends Chunk_1_16 {
         packet.writeBitSet(new BitSet());
 
         packet.writeVarInt(skyLight.getKey().cardinality());
-        packet.writeByteArray(skyLight.getValue().toArray());
+        packet.writeBuilder(skyLight.getValue());
 
         packet.writeVarInt(blockLight.getKey().cardinality());
-        packet.writeByteArray(blockLight.getValue().toArray());
+        packet.writeBuilder(blockLight.getValue());
     }
 
 
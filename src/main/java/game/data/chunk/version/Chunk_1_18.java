@@ -137,10 +137,11 @@ public class Chunk_1_18 extends Chunk_1_17 {
         BlockEntityRegistry blockEntities = RegistryManager.getInstance().getBlockEntityRegistry();
         BlockRegistry globalPalette = GlobalPaletteProvider.getGlobalPalette(getDataVersion());
 
+        int[] states = section.getNumericBlockStates();
         for (int y = 0; y < 16; y++) {
             for (int z = 0; z < 16; z++) {
                 for (int x = 0; x < 16; x++) {
-                    BlockState state = globalPalette.getState(section.getNumericBlockStateAt(x, y, z));
+                    BlockState state = globalPalette.getState(states[ChunkSection.getBlockIndex(x, y, z)]);
 
                     if (blockEntities.isBlockEntity(state.getName())) {
                         Coordinate3D coords = new Coordinate3D(x, y, z).sectionLocalToGlobal(sectionY, this.location);
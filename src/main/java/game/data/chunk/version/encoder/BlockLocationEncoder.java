@@ -1,50 +1,110 @@
 package game.data.chunk.version.encoder;
 
 import game.data.chunk.Chunk;
+import java.util.Arrays;
 
+/**
+ * Reads and writes values packed into an array of longs, as used for block states and biomes. Encoders hold no state,
+ * so a single instance can be shared by all threads.
+ */
 public class BlockLocationEncoder {
-    int individualValueMask;
-    int startLong;
-    int startOffset;
-    int endLong;
 
-    public BlockLocationEncoder() {
+    /**
+     * Get the value at the given position.
+     */
+    public int fetch(long[] blocks, int x, int y, int z, int bitsPerBlock) {
+        if (bitsPerBlock == 0) {
+            return 0;
+        }
+
+        int bitIndex = blockNumber(x, y, z) * bitsPerBlock;
+        int startLong = bitIndex >>> 6;
+        int startOffset = bitIndex & 63;
+
+        long value = blocks[startLong] >>> startOffset;
+        if (startOffset + bitsPerBlock > 64) {
+            value |= blocks[startLong + 1] << (64 - startOffset);
+        }
+        return (int) (value & ((1L << bitsPerBlock) - 1));
     }
 
-    public int fetch(long[] blocks) {
-        int data;
-        if (startLong == endLong) {
-            data = (int) (blocks[startLong] >>> startOffset);
-        } else {
-            int endOffset = 64 - startOffset;
-            data = (int) (blocks[startLong] >>> startOffset | blocks[endLong] << endOffset);
+    /**
+     * Set the value at the given position.
+     */
+    public void write(long[] blocks, int x, int y, int z, int bitsPerBlock, int value) {
+        if (bitsPerBlock == 0) {
+            return;
+        }
+
+        long mask = (1L << bitsPerBlock) - 1;
+        long data = value & mask;
+
+        int bitIndex = blockNumber(x, y, z) * bitsPerBlock;
+        int startLong = bitIndex >>> 6;
+        int startOffset = bitIndex & 63;
+
+        blocks[startLong] = blocks[startLong] & ~(mask << startOffset) | (data << startOffset);
+        if (startOffset + bitsPerBlock > 64) {
+            int shift = 64 - startOffset;
+            blocks[startLong + 1] = blocks[startLong + 1] & ~(mask >>> shift) | (data >>> shift);
         }
-        data &= individualValueMask;
+    }
 
-        return data;
+    static int blockNumber(int x, int y, int z) {
+        return (((y * Chunk.SECTION_HEIGHT) + z) * Chunk.SECTION_WIDTH) + x;
     }
 
-    public void write(long[] blocks, int newIndex) {
-        long data = newIndex & individualValueMask;
+    /**
+     * Read all values from the given array at once, which is much faster than fetching each of them.
+     * Values are ordered the same way as {@link game.data.chunk.ChunkSection#getBlockIndex}.
+     * @param blocks       the packed values
+     * @param bitsPerBlock the number of bits per value
+     * @param out          the array to write the values to, its length determines how many values are read
+     */
+    public void unpack(long[] blocks, int bitsPerBlock, int[] out) {
+        if (bitsPerBlock == 0 || blocks.length == 0) {
+            Arrays.fill(out, 0);
+            return;
+        }
 
-        // first set all relevant bits to 0, then use or to put the new bits in place
-        blocks[startLong] &= ~((long) individualValueMask << startOffset);
-        blocks[startLong] |= (data << startOffset);
+        long mask = (1L << bitsPerBlock) - 1;
+        int bitIndex = 0;
+        for (int i = 0; i < out.length; i++, bitIndex += bitsPerBlock) {
+            int startLong = bitIndex >>> 6;
+            int startOffset = bitIndex & 63;
 
-        if (startLong != endLong) {
-            blocks[endLong] &= ~(individualValueMask >> (64 - startOffset));
-            blocks[endLong] |= (data >> (64 - startOffset));
+            // values may continue in the next long
+            long value = blocks[startLong] >>> startOffset;
+            if (startOffset + bitsPerBlock > 64) {
+                value |= blocks[startLong + 1] << (64 - startOffset);
+            }
+            out[i] = (int) (value & mask);
         }
     }
 
-    public BlockLocationEncoder setTo(int x, int y, int z, int bitsPerBlock) {
-        this.individualValueMask = (1 << bitsPerBlock) - 1;
+    /**
+     * Write all values to the given array at once, the reverse of {@link #unpack}. The array is cleared first.
+     * @param values       the values to write
+     * @param bitsPerBlock the number of bits per value
+     * @param blocks       the array to write to, which should be large enough for the given number of bits
+     */
+    public void pack(int[] values, int bitsPerBlock, long[] blocks) {
+        Arrays.fill(blocks, 0);
+        if (bitsPerBlock == 0) {
+            return;
+        }
 
-        int blockNumber = (((y * Chunk.SECTION_HEIGHT) + z) * Chunk.SECTION_WIDTH) + x;
-        this.startLong = (blockNumber * bitsPerBlock) / 64;
-        this.startOffset = (blockNumber * bitsPerBlock) % 64;
-        this.endLong = ((blockNumber + 1) * bitsPerBlock - 1) / 64;
+        long mask = (1L << bitsPerBlock) - 1;
+        int bitIndex = 0;
+        for (int i = 0; i < values.length; i++, bitIndex += bitsPerBlock) {
+            int startLong = bitIndex >>> 6;
+            int startOffset = bitIndex & 63;
 
-        return this;
+            long value = values[i] & mask;
+            blocks[startLong] |= value << startOffset;
+            if (startOffset + bitsPerBlock > 64) {
+                blocks[startLong + 1] |= value >>> (64 - startOffset);
+            }
+        }
     }
 }
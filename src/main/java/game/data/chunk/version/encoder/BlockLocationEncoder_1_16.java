@@ -1,6 +1,6 @@
 package game.data.chunk.version.encoder;
 
-import game.data.chunk.Chunk;
+import java.util.Arrays;
 
 /**
  * 1.16 needs a a slightly different getPaletteIndex method. Instead of a blockstate now overlapping multiple longs,
@@ -8,50 +8,76 @@ import game.data.chunk.Chunk;
  * actually makes the method a little bit simpler.
  */
 public class BlockLocationEncoder_1_16 extends BlockLocationEncoder {
-    int longIndex;
 
-    public BlockLocationEncoder_1_16() {
-        this.startLong = -1;
-        this.endLong = -1;
-    }
+    @Override
+    public int fetch(long[] blocks, int x, int y, int z, int bitsPerBlock) {
+        // bitsPerBlock can be 0 for a SingleValuePalette, which would cause division by 0 errors
+        if (bitsPerBlock == 0) {
+            return 0;
+        }
 
-    public int fetch(long[] blocks) {
-        int data = (int) (blocks[longIndex] >>> startOffset);
-        data &= individualValueMask;
+        int blocksPerLong = 64 / bitsPerBlock;
+        int blockNumber = blockNumber(x, y, z);
+        int startOffset = (blockNumber % blocksPerLong) * bitsPerBlock;
 
-        return data;
+        return (int) ((blocks[blockNumber / blocksPerLong] >>> startOffset) & ((1L << bitsPerBlock) - 1));
     }
 
-    public void write(long[] blocks, int newIndex) {
-        long data = newIndex & individualValueMask;
+    @Override
+    public void write(long[] blocks, int x, int y, int z, int bitsPerBlock, int value) {
+        if (bitsPerBlock == 0) {
+            return;
+        }
+
+        long mask = (1L << bitsPerBlock) - 1;
+        int blocksPerLong = 64 / bitsPerBlock;
+        int blockNumber = blockNumber(x, y, z);
+        int longIndex = blockNumber / blocksPerLong;
+        int startOffset = (blockNumber % blocksPerLong) * bitsPerBlock;
 
-        // first set all relevant bits to 0, then use or to put the new bits in place
-        blocks[longIndex] &= ~((long) individualValueMask << startOffset);
-        blocks[longIndex] |= (data << startOffset);
+        blocks[longIndex] = blocks[longIndex] & ~(mask << startOffset) | ((value & mask) << startOffset);
     }
 
-    public BlockLocationEncoder setTo(int x, int y, int z, int bitsPerBlock) {
-        this.individualValueMask = (1 << bitsPerBlock) - 1;
+    @Override
+    public void unpack(long[] blocks, int bitsPerBlock, int[] out) {
+        if (bitsPerBlock == 0 || blocks.length == 0) {
+            Arrays.fill(out, 0);
+            return;
+        }
 
-        int blockNumber = (((y * Chunk.SECTION_HEIGHT) + z) * Chunk.SECTION_WIDTH) + x;
+        long mask = (1L << bitsPerBlock) - 1;
+        int perLong = 64 / bitsPerBlock;
 
-        // bitsPerBlock can be 0 if we're trying to call the BlockLocationEncoder
-        // on a SingleValuePalette. Doing so would cause division by 0 errors!
-        if (bitsPerBlock == 0) {
-            longIndex = 0;
-            startOffset = 0;
-        } else {
-            int blocksPerLong = 64 / bitsPerBlock;
-            this.longIndex = blockNumber / blocksPerLong;
-            int indexInLong = blockNumber % blocksPerLong;
-            this.startOffset = indexInLong * bitsPerBlock;
+        int i = 0;
+        for (int l = 0; l < blocks.length && i < out.length; l++) {
+            long word = blocks[l];
+            for (int j = 0; j < perLong && i < out.length; j++, i++) {
+                out[i] = (int) (word & mask);
+                word >>>= bitsPerBlock;
+            }
         }
 
-        if (longIndex < 0) {
-            System.out.println("INVALID LONG INDEX: ");
-            System.out.println("\t" + x +", " + y + ", " + z + " :: " + bitsPerBlock);
+        // arrays that are too short are treated as if the rest is empty
+        Arrays.fill(out, i, out.length, 0);
+    }
+
+    @Override
+    public void pack(int[] values, int bitsPerBlock, long[] blocks) {
+        if (bitsPerBlock == 0) {
+            Arrays.fill(blocks, 0);
+            return;
         }
 
-        return this;
+        long mask = (1L << bitsPerBlock) - 1;
+        int perLong = 64 / bitsPerBlock;
+
+        int i = 0;
+        for (int l = 0; l < blocks.length; l++) {
+            long word = 0;
+            for (int j = 0; j < perLong && i < values.length; j++, i++) {
+                word |= (values[i] & mask) << (j * bitsPerBlock);
+            }
+            blocks[l] = word;
+        }
     }
 }
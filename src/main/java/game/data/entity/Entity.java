@@ -3,6 +3,8 @@ package game.data.entity;
 import config.Version;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 
 import config.Config;
@@ -23,7 +25,8 @@ import se.llbit.nbt.StringTag;
 import se.llbit.nbt.Tag;
 
 public abstract class Entity extends PrimitiveEntity implements IMovableEntity {
-    private static EquipmentReader equipmentReader;
+    // sessions may be on different versions, so there is one reader per data version
+    private static final Map<Integer, EquipmentReader> equipmentReaders = new ConcurrentHashMap<>();
     public final static double CHANGE_MULTIPLIER = 4096.0;
     public final static float ROTATION_MULTIPLIER = 360f / 256f;
 
@@ -36,11 +39,10 @@ public abstract class Entity extends PrimitiveEntity implements IMovableEntity {
     private Slot[] equipment;
 
     private BiConsumer<CoordinateDim2D, CoordinateDim2D> onMove;
+    private final EquipmentReader equipmentReader;
 
     Entity() {
-        if (equipmentReader == null) {
-            equipmentReader = EquipmentReader.getVersioned();
-        }
+        this.equipmentReader = equipmentReaders.computeIfAbsent(Config.getDataVersion(), v -> EquipmentReader.getVersioned());
         this.dimension = WorldManager.getInstance().getDimension();
     }
 
@@ -4,8 +4,9 @@ import static util.ExceptionHandling.attempt;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -15,6 +16,7 @@ import game.data.coordinates.CoordinateDim2D;
 import game.data.entity.specific.Villager;
 import packets.DataTypeProvider;
 import packets.UUID;
+import proxy.metrics.Metrics;
 import se.llbit.nbt.SpecificTag;
 
 public class EntityRegistry {
@@ -24,7 +26,7 @@ public class EntityRegistry {
     private final Map<Integer, Entity> entities;
     private final WorldManager worldManager;
 
-    private final ExecutorService executor;
+    private final ThreadPoolExecutor executor;
 
     public EntityRegistry(WorldManager manager) {
         this.worldManager = manager;
@@ -32,7 +34,13 @@ public class EntityRegistry {
         this.entities = new ConcurrentHashMap<>();
         this.players = new ConcurrentHashMap<>();
 
-        this.executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Entity Parser Service"));;
+        // same as newSingleThreadExecutor except we can observe the queue size
+        this.executor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            manager.getSession().threadFactory("Entity Parser Service")
+        );
+        Metrics.registerQueue("Entity Parser Service", this::countQueuedTasks);
     }
     /**
      * Add a new entity.
@@ -250,6 +258,10 @@ public class EntityRegistry {
         return this.players.size();
     }
 
+    public int countQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
     public Collection<PlayerEntity> getPlayerSet() {
         return players.values();
     }
@@ -1,6 +1,7 @@
 package game.data.maps;
 
 import config.Config;
+import config.Session;
 import packets.DataTypeProvider;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.IntTag;
@@ -47,7 +48,7 @@ public class MapRegistry {
             // if we can't read it, thats fine, we'll use maxId = 0
         }
 
-        this.executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Map Parser Service"));;
+        this.executor = Executors.newSingleThreadExecutor(Session.current().threadFactory("Map Parser Service"));
     }
 
     /**
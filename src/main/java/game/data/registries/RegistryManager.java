@@ -1,5 +1,6 @@
 package game.data.registries;
 
+import config.Session;
 import game.data.chunk.BlockEntityRegistry;
 import game.data.container.ItemRegistry;
 import game.data.container.MenuRegistry;
@@ -9,24 +10,23 @@ import game.data.villagers.VillagerTypeRegistry;
 import java.io.IOException;
 
 public class RegistryManager {
-    private static RegistryManager instance;
     private MenuRegistry menuRegistry;
     private ItemRegistry itemRegistry;
     private BlockEntityRegistry blockEntityRegistry;
     private VillagerProfessionRegistry villagerProfessionRegistry;
     private VillagerTypeRegistry villagerTypeRegistry;
 
-    private RegistryManager() { }
+    public RegistryManager() { }
 
     public static void setInstance(RegistryManager registryManager) {
-        instance = registryManager;
+        Session.current().setRegistryManager(registryManager);
     }
 
+    /**
+     * Get the registries of the current session, as servers may send their own.
+     */
     public static RegistryManager getInstance() {
-        if (instance == null) {
-            instance = new RegistryManager();
-        }
-        return instance;
+        return Session.current().getRegistryManager();
     }
 
 
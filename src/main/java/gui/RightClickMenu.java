@@ -77,13 +77,13 @@ public class RightClickMenu extends ContextMenu {
 
         menu.add(construct("Redraw nearby chunks", e -> {
             Coordinate2D region = handler.getCursorCoordinates().globalToRegion();
-            new Thread(() -> WorldManager.getInstance().drawExistingChunks(region)).start();
+            Thread.ofVirtual().start(() -> WorldManager.getInstance().drawExistingChunks(region));
         }));
 
         menu.add(construct("Redraw region", e -> {
             Coordinate2D region = handler.getCursorCoordinates().globalToRegion();
             handler.getRegionHandler().resetRegion(region);
-            new Thread(() -> WorldManager.getInstance().drawExistingRegion(region)).start();
+            Thread.ofVirtual().start(() -> WorldManager.getInstance().drawExistingRegion(region));
         }));
 
 
@@ -6,6 +6,7 @@ import static util.ExceptionHandling.attempt;
 import static util.ExceptionHandling.attemptQuiet;
 
 import config.Config;
+import config.Session;
 import game.data.WorldManager;
 import game.data.coordinates.Coordinate2D;
 import game.data.coordinates.CoordinateDim2D;
@@ -21,14 +22,15 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 import org.apache.commons.io.FileUtils;
+import proxy.metrics.Metrics;
 
 /**
  * Class to manage overlay images.
@@ -50,9 +52,14 @@ public class RegionImageHandler {
         this.regions = new ConcurrentHashMap<>();
         this.resizeLater = new ConcurrentLinkedQueue<>();
 
-        imageHandlerExecutor = Executors.newSingleThreadScheduledExecutor(
-            (r) -> new Thread(r, "Region Image Handler")
+        // the GUI only shows the main session, so images are always written to its output directory. Writing images is
+        // blocking file I/O, so there is no need to tie up a platform thread for it.
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            Session.main().virtualThreadFactory("Region Image Handler")
         );
+        Metrics.registerQueue("Region Image Handler", () -> executor.getQueue().size());
+
+        imageHandlerExecutor = executor;
         imageHandlerExecutor.scheduleWithFixedDelay(this::save, 20, 20, TimeUnit.SECONDS);
         imageHandlerExecutor.scheduleWithFixedDelay(this::resizeLater, 15, 5, TimeUnit.SECONDS);
     }
@@ -151,12 +158,12 @@ public class RegionImageHandler {
      * Searches for all region files in a directory to load them in.
      */
     private void loadFromFile() {
-        new Thread(() -> attemptQuiet(() -> {
+        Thread.ofVirtual().name("Region Image Loader").start(() -> Session.main().run(() -> attemptQuiet(() -> {
             // walk one of the modes, check for the others if we find one
             Files.walk(dimensionPath(this.activeDimension, ImageMode.NORMAL), 1)
                 .limit(32000)
                 .forEach(image -> attempt(() -> loadFromFile(regions, this.activeDimension, image)));
-        })).start();
+        })));
     }
 
     private static void loadFromFile(Map<Coordinate2D, RegionImages> regions, Dimension dim, Path image) {
@@ -3,15 +3,15 @@ package packets;
 import proxy.CompressionManager;
 
 import javax.naming.SizeLimitExceededException;
+import java.util.zip.DataFormatException;
 
 public class DataProvider {
     private static final int MAX_SIZE = 2097152;
-    private DataReader reader;
+    private static final int MAX_VARINT_SIZE = 5;
     private CompressionManager compressionManager;
 
-    public DataProvider(DataReader reader) {
-        this.reader = reader;
-    }
+    private final VarIntResult varInt = new VarIntResult();
+    private final byte[] packetIdPrefix = new byte[MAX_VARINT_SIZE];
 
     public void setCompressionManager(CompressionManager compressionManager) {
         this.compressionManager = compressionManager;
@@ -20,31 +20,90 @@ public class DataProvider {
     /**
      * Provides the object with all the bytes from the packet, allowing them to be read into the correct data types
      * easily. This method will also decompress the packet, as this is the first time we have the full packet
-     * available, which is what we need for valid decompression.
-     * @param size the packet size
+     * available, which is what we need for valid decompression. Uncompressed packets are not copied, the data type
+     * provider reads them directly from the given array.
+     * @param data   the array containing the packet
+     * @param offset the start of the packet in the array, after the packet size
+     * @param size   the packet size
      * @return the data parser for the decompressed packet
      */
-    public DataTypeProvider withSize(int size) throws SizeLimitExceededException {
-        byte[] compressed = reader.readByteArray(size);
+    public DataTypeProvider withFrame(byte[] data, int offset, int size) throws SizeLimitExceededException {
+        return withFrame(data, offset, size, isCompressionEnabled());
+    }
 
-        byte[] fullPacket;
-        if (compressionManager.isCompressionEnabled()) {
-            final int[] compressionPos = {0};
-            int uncompressedSize = DataReader.readVarInt(
-                () -> compressionPos[0] < compressed.length,
-                () -> compressed[compressionPos[0]++]
-            );
+    /**
+     * Same as {@link #withFrame(byte[], int, int)}, but with the compression state given by the caller. This is used
+     * when the packet is parsed later, as the compression state may have changed by then.
+     */
+    public DataTypeProvider withFrame(byte[] data, int offset, int size, boolean compressed) throws SizeLimitExceededException {
+        if (!compressed) {
+            return DataTypeProvider.ofPacket(data, offset, size);
+        }
+
+        int end = offset + size;
+        VarIntResult uncompressedSize = readVarInt(data, offset, end, new VarIntResult());
 
-            // packets over this size will crash the game client, so it may help to reject them here
-            if (uncompressedSize > MAX_SIZE) {
-                throw new SizeLimitExceededException("WARNING: discarding packet over maximum size (size: " + uncompressedSize + ")");
-            }
+        int dataStart = offset + uncompressedSize.numBytes();
+        int dataLength = end - dataStart;
 
-            fullPacket = compressionManager.decompressPacket(compressed, compressionPos[0], uncompressedSize);
-        } else {
-            fullPacket = compressed;
+        // packets below the compression threshold are sent as-is
+        if (uncompressedSize.getResult() == 0) {
+            return DataTypeProvider.ofPacket(data, dataStart, dataLength);
         }
 
-        return DataTypeProvider.ofPacket(fullPacket);
+        // packets over this size will crash the game client, so it may help to reject them here
+        if (uncompressedSize.getResult() > MAX_SIZE) {
+            throw new SizeLimitExceededException("WARNING: discarding packet over maximum size (size: " + uncompressedSize.getResult() + ")");
+        }
+
+        return DataTypeProvider.ofPacket(compressionManager.decompressPacket(data, dataStart, dataLength, uncompressedSize.getResult()));
+    }
+
+    /**
+     * Read only the packet ID, so that we can decide whether the packet needs to be parsed at all. For compressed
+     * packets only the first few bytes are decompressed, which is enough to contain the ID.
+     * @param data   the array containing the packet
+     * @param offset the start of the packet in the array, after the packet size
+     * @param size   the packet size
+     * @return the packet ID
+     */
+    public int readPacketId(byte[] data, int offset, int size) throws SizeLimitExceededException {
+        int end = offset + size;
+        if (!compressionManager.isCompressionEnabled()) {
+            return readVarInt(data, offset, end, varInt).getResult();
+        }
+
+        VarIntResult uncompressedSize = readVarInt(data, offset, end, varInt);
+        int dataStart = offset + uncompressedSize.numBytes();
+
+        // packets below the compression threshold are sent as-is
+        if (uncompressedSize.getResult() == 0) {
+            return readVarInt(data, dataStart, end, varInt).getResult();
+        }
+
+        if (uncompressedSize.getResult() > MAX_SIZE) {
+            throw new SizeLimitExceededException("WARNING: discarding packet over maximum size (size: " + uncompressedSize.getResult() + ")");
+        }
+
+        int prefixLength;
+        try {
+            prefixLength = CompressionManager.zlibDecompressPrefix(data, dataStart, end - dataStart, packetIdPrefix);
+        } catch (DataFormatException ex) {
+            throw new RuntimeException("Could not decompress packet ID", ex);
+        }
+        return readVarInt(packetIdPrefix, 0, prefixLength, varInt).getResult();
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionManager.isCompressionEnabled();
+    }
+
+    private static VarIntResult readVarInt(byte[] data, int pos, int end, VarIntResult res) {
+        res.reset();
+        DataReader.readVarInt(data, pos, end, res);
+        if (!res.isComplete()) {
+            throw new RuntimeException("Invalid VarInt found! Packet structure may have changed.");
+        }
+        return res;
     }
 }
@@ -1,91 +1,109 @@
 package packets;
 
+import config.Session;
 import packets.handler.PacketHandler;
-import packets.lib.ByteQueue;
+import packets.lib.FrameBuffer;
 import proxy.ByteConsumer;
+import proxy.ByteProcessor;
 import proxy.EncryptionManager;
+import proxy.IExceptionHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.function.UnaryOperator;
 
 /**
  * This class takes care of reading in bytes from the network steam and turning it into individual packets.
  */
 public class DataReader {
-    private static final int QUEUE_INIT_SIZE = 2 << 15 - 1;
-    private ByteQueue queue;
-    private ByteQueue currentPacket;
+    private static final int SEGMENT_SIZE = 1 << 17;
+    private FrameBuffer buffer;
     private PacketHandler packetHandler;
 
     private final Supplier<Boolean> encryptionStatus;
-    private final UnaryOperator<byte[]> decrypt;
+    private final ByteProcessor decrypt;
     private final ByteConsumer transmit;
+    private ByteConsumer recorder;
+
+    // packets are parsed on a separate thread, so that they can be forwarded before they are parsed
+    private final ThreadPoolExecutor parser;
 
     private VarIntResult varIntPacketSize;
 
+    // while a synchronous packet is being parsed, reading is suspended and continued through the resumer
+    private Consumer<IExceptionHandler> resumer;
+    private boolean suspended;
+    private int generation;
 
     /**
      * Initialise the reader. Gets a decryptor operator and transmitter method.
-     * @param decrypt  the decryptor operator
-     * @param transmit the transmit function
+     * @param threadFactory creates the parser thread
+     * @param decrypt       the decryptor operator, decrypts the given bytes in place
+     * @param transmit      the transmit function
      */
-    private DataReader(Supplier<Boolean> encryptionStatus, UnaryOperator<byte[]> decrypt, ByteConsumer transmit) {
+    private DataReader(ThreadFactory threadFactory, Supplier<Boolean> encryptionStatus, ByteProcessor decrypt, ByteConsumer transmit) {
         this.encryptionStatus = encryptionStatus;
         this.decrypt = decrypt;
         this.transmit = transmit;
 
+        // same as newSingleThreadExecutor except we can clear the queue
+        this.parser = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            threadFactory
+        );
+
         reset();
     }
 
     /**
-     * Reset the reader in case the connection was lost.
+     * Reset the reader in case the connection was lost. Packets that have not been parsed yet are discarded, as they
+     * belong to the old connection.
      */
     public void reset() {
-        queue = new ByteQueue(QUEUE_INIT_SIZE);
-        currentPacket = new ByteQueue(QUEUE_INIT_SIZE);
+        parser.getQueue().clear();
+        suspended = false;
+        generation++;
+        buffer = new FrameBuffer(SEGMENT_SIZE);
         varIntPacketSize = new VarIntResult();
     }
 
     /**
-     * Initialise a client-bound data reader.
+     * Initialise a client-bound data reader. Packets are parsed as part of the given session.
      */
-    public static DataReader clientBound(EncryptionManager manager) {
-        return new DataReader(manager::isEncryptionEnabled, manager::clientBoundDecrypt, manager::streamToClient);
+    public static DataReader clientBound(EncryptionManager manager, Session session) {
+        return new DataReader(session.threadFactory("Client-bound Packet Parser"), manager::isEncryptionEnabled, manager::clientBoundDecrypt, manager::streamToClient);
     }
 
     /**
-     * Initialise a server-bound data reader.
+     * Initialise a server-bound data reader. Packets are parsed as part of the given session.
      */
-    public static DataReader serverBound(EncryptionManager manager) {
-        return new DataReader(manager::isEncryptionEnabled, manager::serverBoundDecrypt, manager::streamToServer);
-    }
-
-    /**
-     * Read a var int, uses the given hasNext and readNext methods to get the required bytes.
-     */
-    public static int readVarInt(Supplier<Boolean> hasNext, Supplier<Byte> readNext) {
-        VarIntResult res = readVarInt(hasNext, readNext, new VarIntResult(false, 0, 0));
-        if (!res.isComplete()) {
-            throw new RuntimeException("Invalid VarInt found! Packet structure may have changed.");
-        }
-        return res.getResult();
+    public static DataReader serverBound(EncryptionManager manager, Session session) {
+        return new DataReader(session.threadFactory("Server-bound Packet Parser"), manager::isEncryptionEnabled, manager::serverBoundDecrypt, manager::streamToServer);
     }
 
     /**
-     * Read a full or partial varInt from the given reader method. As the connection will sometimes give us partial
-     * varInts (with the rest having not yet arrived) we need to make sure we can handle partial results without the
-     * connection becoming desynchronised. Adjusted from: https://wiki.vg/Protocol#Packet_format
-     * @param res the object to the store the full or partial result in
+     * Read a full or partial varInt directly from the given array, without reading past the given end index. As the
+     * connection will sometimes give us partial varInts (with the rest having not yet arrived) we need to make sure we
+     * can handle partial results without the connection becoming desynchronised.
+     * Adjusted from: https://wiki.vg/Protocol#Packet_format
+     * @param res the object to the store the result in, should be reset before calling
      * @return the same object that it was given
      */
-    public static VarIntResult readVarInt(Supplier<Boolean> hasNext, Supplier<Byte> readNext, VarIntResult res) {
+    public static VarIntResult readVarInt(byte[] data, int pos, int end, VarIntResult res) {
         byte read;
         do {
-            if (!hasNext.get()) {
+            if (pos >= end) {
                 return res;
             }
-            read = readNext.get();
+            read = data[pos++];
             int value = (read & 0b01111111);
             res.addValue(value << (7 * res.numBytes()));
 
@@ -100,6 +118,24 @@ public class DataReader {
         return res;
     }
 
+    /**
+     * Push the remaining data in the given buffer to this reader. The buffer is fully consumed, so it can be re-used
+     * by the caller afterwards.
+     * @param data the buffer containing the new data
+     */
+    public void pushData(ByteBuffer data) throws IOException {
+        int amount = data.remaining();
+        if (amount == 0) { return; }
+
+        buffer.ensureWritable(amount);
+        int start = buffer.writeIndex();
+        buffer.write(data);
+
+        decryptPacket(start, amount);
+        record(start, amount);
+        readPackets();
+    }
+
     /**
      * Push data to this reader.
      * @param b      the bytes array containing the new data
@@ -108,136 +144,161 @@ public class DataReader {
     public void pushData(byte[] b, int amount) throws IOException {
         if (amount == 0) { return; }
 
-        if (encryptionStatus.get()) {
-            decryptPacket(b, amount);
-        } else {
-            for (int i = 0; i < amount; i++) {
-                queue.insert(b[i]);
-            }
-        }
+        buffer.ensureWritable(amount);
+        int start = buffer.writeIndex();
+        buffer.write(b, 0, amount);
+
+        decryptPacket(start, amount);
+        record(start, amount);
         readPackets();
     }
 
     /**
-     * If the packet is encrypted, decrypt it. Adds the decrypted bytes to the regular queue.
-     * @param b      the encrypted bytes
-     * @param amount the number of bytes to read from the given array
+     * If the connection is encrypted, decrypt the newly added bytes. This is done in place, the encrypted bytes in
+     * the buffer are replaced by the decrypted ones.
+     * @param start  the position in the buffer of the first new byte
+     * @param amount the number of new bytes
      */
-    private void decryptPacket(byte[] b, int amount) {
-        byte[] encrypted = b;
-
-        if (b.length != amount) {
-            encrypted = new byte[amount];
-            System.arraycopy(b, 0, encrypted, 0, amount);
+    private void decryptPacket(int start, int amount) {
+        if (encryptionStatus.get()) {
+            decrypt.process(buffer.array(), start, amount);
         }
+    }
 
-        byte[] decrypted = decrypt.apply(encrypted);
-
-        for (byte aDecrypted : decrypted) {
-            queue.insert(aDecrypted);
+    /**
+     * If the session is being recorded, pass on the newly added bytes after they have been decrypted.
+     */
+    private void record(int start, int amount) throws IOException {
+        if (recorder != null) {
+            recorder.consume(buffer.array(), start, amount);
         }
     }
 
     /**
-     * Read packets from the byte queue. This method will first try to read a varInt indicating the upcoming packet's
+     * Read packets from the buffer. This method will first try to read a varInt indicating the upcoming packet's
      * size. Then, when the varInt is complete (may take several data transmissions), it will check if there is enough
      * bytes to complete the packet (this too may take several transmissions). After the packet is complete it will
-     * be passed to the packet builder which may decompress and read the data.
+     * be passed to the packet handler which may decompress and read the data. The handler is given a view on the
+     * buffer, so the packet is not copied. The view stays valid after the packet has been forwarded, so most packets
+     * are parsed later on the parser thread.
      * <p>
-     * If the packet builder returns true, this means we will forward the packet. If the builder returns false, we will
+     * If the packet handler returns true, this means we will forward the packet. If the handler returns false, we will
      * dump the packet and move on. This will happen for the encryption related packets as sending the real one to the
      * server will prevent us from getting the encryption keys.
+     * <p>
+     * If the handler can only decide once the packet has been parsed, reading is suspended until it has, see
+     * {@link #setResumer}.
      */
     private void readPackets() throws IOException {
-        int nextPacketSize;
-        while (hasNext() && readPacketSize().isComplete()) {
-            nextPacketSize = varIntPacketSize.getResult();
+        while (!suspended && !buffer.isEmpty() && readPacketSize().isComplete()) {
+            int nextPacketSize = varIntPacketSize.getResult();
+            int frameLength = varIntPacketSize.numBytes() + nextPacketSize;
 
             // if we have enough bytes to parse the packet
-            if (!hasBytes(nextPacketSize)) {
+            if (buffer.readable() < frameLength) {
                 return;
             }
+
+            byte[] data = buffer.array();
+            int frameStart = buffer.readIndex();
+
             // parse the packet (including decompression)
-            boolean forwardPacket = true;
+            CompletableFuture<Boolean> forwardPacket;
             try {
-                forwardPacket = getPacketHandler().handle(nextPacketSize);
+                forwardPacket = getPacketHandler().handle(data, frameStart + varIntPacketSize.numBytes(), nextPacketSize);
             } catch (Exception ex) {
                 ex.printStackTrace();
+                forwardPacket = CompletableFuture.completedFuture(true);
             }
 
-            // check if the the packet length was correct
-            int expectedLength = nextPacketSize + varIntPacketSize.numBytes();
-            if (currentPacket.size() != expectedLength) {
-                String msg = "Packet parsing may have been incorrect! Expected length: " + expectedLength + ". Used bytes: " + currentPacket.size();
-                new IllegalStateException(msg).printStackTrace(System.err);
-            }
-
-            // forward the packet unless the packet builder decided swallowed it
-            if (forwardPacket) {
-                transmit.consume(currentPacket);
+            if (!forwardPacket.isDone() && resumer != null) {
+                suspend(forwardPacket, frameLength);
+                return;
             }
 
-            // clean up to prepare for next packet
-            currentPacket.clear();
-            varIntPacketSize.reset();
+            finishPacket(forwardPacket.join(), frameLength);
         }
     }
 
     /**
-     * Check if we have more bytes in the queue right now.
+     * Stop reading until the packet at the start of the buffer has been parsed. The rest of the packet is handled
+     * through the resumer once the parser is done with it.
      */
-    private boolean hasNext() {
-        return !queue.isEmpty();
+    private void suspend(CompletableFuture<Boolean> forwardPacket, int frameLength) {
+        suspended = true;
+
+        int suspendedGeneration = generation;
+        forwardPacket.thenAccept(forward -> resumer.accept(() -> resume(suspendedGeneration, forward, frameLength)));
     }
 
-    /**
-     * Read the packet size. Will continue reading with a previous result if that was not yet complete.
-     */
-    private VarIntResult readPacketSize() {
-        if (!varIntPacketSize.isComplete()) {
-            readVarInt(this::hasNext, this::readNext, varIntPacketSize);
+    private void resume(int suspendedGeneration, boolean forwardPacket, int frameLength) throws IOException {
+        // the reader was reset while the packet was being parsed, so it belongs to a connection that no longer exists
+        if (suspendedGeneration != generation) {
+            return;
+        }
+
+        suspended = false;
+        finishPacket(forwardPacket, frameLength);
+        readPackets();
+    }
+
+    private void finishPacket(boolean forwardPacket, int frameLength) throws IOException {
+        // forward the packet unless the packet handler decided to swallow it
+        if (forwardPacket) {
+            transmit.consume(buffer.array(), buffer.readIndex(), frameLength);
         }
-        return varIntPacketSize;
+
+        // move on to the next packet
+        buffer.skip(frameLength);
     }
 
     /**
-     * Check if we have the given number of bytes. Used to check if the next package is complete.
-     * @param amount the number of bytes required
-     * @return true if we have sufficient bytes, otherwise false
+     * Read the packet size from the start of the buffer. The size is not consumed, so that the full packet
+     * including its size prefix can be forwarded in one go.
      */
-    private boolean hasBytes(int amount) {
-        return amount <= queue.size();
+    private VarIntResult readPacketSize() {
+        varIntPacketSize.reset();
+        return readVarInt(buffer.array(), buffer.readIndex(), buffer.writeIndex(), varIntPacketSize);
     }
 
-
     private PacketHandler getPacketHandler() {
         return packetHandler;
     }
 
-    public void setPacketHandler(PacketHandler packetHandler) {
-        this.packetHandler = packetHandler;
-        packetHandler.setReader(new DataProvider(this));
+    public void setRecorder(ByteConsumer recorder) {
+        this.recorder = recorder;
     }
 
     /**
-     * Read a byte, also add it the current packet.
+     * Set how reading continues after a synchronous packet has been parsed. Instead of waiting for the parser, reading
+     * is suspended and the given consumer is called from the parser thread with the work that is left. It should run
+     * that work on the thread that pushes data into this reader. Without a resumer, the reader waits for the parser
+     * instead.
      */
-    private byte readNext() {
-        currentPacket.insert(queue.peek());
+    public void setResumer(Consumer<IExceptionHandler> resumer) {
+        this.resumer = resumer;
+    }
 
-        return queue.remove();
+    /**
+     * Whether the reader is waiting for a packet to be parsed before it can continue.
+     */
+    public boolean isSuspended() {
+        return suspended;
     }
 
     /**
-     * Read an array of bytes from the queue. Used to get all the bytes for a packet.
-     * @param arrayLength the number of bytes to get
-     * @return the full array
+     * Wait until all packets that have been read so far have been parsed.
      */
-    byte[] readByteArray(int arrayLength) {
-        byte[] bytes = new byte[arrayLength];
-        for (int i = 0; i < arrayLength; i++) {
-            bytes[i] = readNext();
+    public void awaitParsed() {
+        try {
+            parser.submit(() -> { }).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            ex.printStackTrace();
         }
-        return bytes;
+    }
+
+    public void setPacketHandler(PacketHandler packetHandler) {
+        this.packetHandler = packetHandler;
+        packetHandler.setReader(new DataProvider(), parser);
     }
 }
@@ -18,12 +18,15 @@ import se.llbit.nbt.SpecificTag;
 
 import java.io.DataInputStream;
 import java.io.InputStream;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Objects;
 import se.llbit.nbt.Tag;
 
 /**
@@ -32,16 +35,24 @@ import se.llbit.nbt.Tag;
  */
 public class DataTypeProvider {
     private static final int MAX_SHORT_VAL = 1 << 15;
+
+    // views to read multi-byte values straight from the packet array, the protocol is big-endian
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle FLOAT = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle DOUBLE = MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.BIG_ENDIAN);
+
     private byte[] finalFullPacket;
     private int pos;
+    private int limit;
 
     public byte[] debug__getFullArray() {
         return finalFullPacket;
     }
     public String debug__readableString() {
-        char[] out = new char[finalFullPacket.length];
-        for (int i = 0; i < finalFullPacket.length; i++) {
-            byte b = finalFullPacket[i];
+        char[] out = new char[limit - pos];
+        for (int i = 0; i < out.length; i++) {
+            byte b = finalFullPacket[pos + i];
             if (b >= 32) {
                 out[i] = (char) b;
             } else {
@@ -51,22 +62,49 @@ public class DataTypeProvider {
         return new String(out);
     }
     public DataTypeProvider(byte[] finalFullPacket) {
+        this(finalFullPacket, 0, finalFullPacket.length);
+    }
+
+    /**
+     * Create a provider that reads only the given range of the array. The array is not copied, so its contents in
+     * this range should not change while the provider is in use.
+     */
+    public DataTypeProvider(byte[] finalFullPacket, int offset, int length) {
         this.finalFullPacket = finalFullPacket;
-        this.pos = 0;
+        this.pos = offset;
+        this.limit = offset + length;
     }
 
     public static DataTypeProvider ofPacket(byte[] finalFullPacket) {
+        return ofPacket(finalFullPacket, 0, finalFullPacket.length);
+    }
+
+    public static DataTypeProvider ofPacket(byte[] finalFullPacket, int offset, int length) {
         return Config.versionReporter().select(DataTypeProvider.class,
-                Option.of(Version.V1_20_6, () -> new DataTypeProvider_1_20_6(finalFullPacket)),
-                Option.of(Version.V1_20_2, () -> new DataTypeProvider_1_20_2(finalFullPacket)),
-                Option.of(Version.V1_14, () -> new DataTypeProvider_1_14(finalFullPacket)),
-                Option.of(Version.V1_13, () -> new DataTypeProvider_1_13(finalFullPacket)),
-                Option.of(Version.ANY, () -> new DataTypeProvider(finalFullPacket))
+                Option.of(Version.V1_20_6, () -> new DataTypeProvider_1_20_6(finalFullPacket, offset, length)),
+                Option.of(Version.V1_20_2, () -> new DataTypeProvider_1_20_2(finalFullPacket, offset, length)),
+                Option.of(Version.V1_14, () -> new DataTypeProvider_1_14(finalFullPacket, offset, length)),
+                Option.of(Version.V1_13, () -> new DataTypeProvider_1_13(finalFullPacket, offset, length)),
+                Option.of(Version.ANY, () -> new DataTypeProvider(finalFullPacket, offset, length))
         );
     }
 
+    /**
+     * Create a provider for the next given number of bytes, and skip over them in this provider. The new provider is
+     * a view on the same array, so no data is copied. As packet arrays are not modified once they are parsed, the view
+     * can safely be handed to other threads.
+     */
     public DataTypeProvider ofLength(int length) {
-        return new DataTypeProvider(this.readByteArray(length));
+        DataTypeProvider view = view(finalFullPacket, checkRemaining(length), length);
+        pos += length;
+        return view;
+    }
+
+    /**
+     * Create a provider of the same version for the given range of the array.
+     */
+    protected DataTypeProvider view(byte[] data, int offset, int length) {
+        return new DataTypeProvider(data, offset, length);
     }
 
     public long readVarLong() {
@@ -74,11 +112,11 @@ public class DataTypeProvider {
         long result = 0;
         byte read;
         do {
-            if (!hasNext()) {
+            if (pos >= limit) {
                 throw new RuntimeException("Invalid VarLong found! Packet structure may have changed.");
             }
-            read = readNext();
-            int value = (read & 0b01111111);
+            read = finalFullPacket[pos++];
+            long value = (read & 0b01111111);
             result |= (value << (7 * numRead));
 
             numRead++;
@@ -91,25 +129,36 @@ public class DataTypeProvider {
     }
 
     public boolean hasNext() {
-        return pos < finalFullPacket.length;
+        return pos < limit;
+    }
+
+    /**
+     * Check that the given number of bytes can be read from the current position. The array is often shared with
+     * other packets, so reading past the limit would not fail by itself but silently return the next packet's data.
+     * @return the current position
+     */
+    private int checkRemaining(int bytes) {
+        return Objects.checkFromIndexSize(pos, bytes, limit);
     }
 
     public byte readNext() {
+        checkRemaining(1);
         return finalFullPacket[pos++];
     }
 
     public int readInt() {
-        byte[] bytes = readByteArray(4);
-        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
-        buffer.put(bytes);
-        ((Buffer) buffer).flip();
-        return buffer.getInt();
+        int val = (int) INT.get(finalFullPacket, checkRemaining(Integer.BYTES));
+        pos += Integer.BYTES;
+        return val;
     }
 
+    /**
+     * Read the given number of bytes into a new array. As the array is a copy, it can be kept after parsing.
+     */
     public byte[] readByteArray(int size) {
         byte[] res = new byte[size];
 
-        System.arraycopy(finalFullPacket, pos, res, 0, size);
+        System.arraycopy(finalFullPacket, checkRemaining(size), res, 0, size);
         pos += size;
 
         return res;
@@ -122,21 +171,37 @@ public class DataTypeProvider {
     public String readString() {
         int stringSize = readVarInt();
 
-        StringBuilder sb = new StringBuilder();
-        while (stringSize-- > 0) {
-            sb.appendCodePoint(readNext() & 0xFF);
-        }
-        return sb.toString();
+        // each byte is read as a single character
+        String res = new String(finalFullPacket, checkRemaining(stringSize), stringSize, StandardCharsets.ISO_8859_1);
+        pos += stringSize;
+        return res;
     }
 
+    /**
+     * Read a varInt directly from the array. Adjusted from: https://wiki.vg/Protocol#Packet_format
+     */
     public int readVarInt() {
-        return DataReader.readVarInt(this::hasNext, this::readNext);
+        int numRead = 0;
+        int result = 0;
+        byte read;
+        do {
+            if (pos >= limit) {
+                throw new RuntimeException("Invalid VarInt found! Packet structure may have changed.");
+            }
+            read = finalFullPacket[pos++];
+            result |= (read & 0b01111111) << (7 * numRead);
+
+            numRead++;
+            if (numRead > 5) {
+                throw new RuntimeException("VarInt is too big");
+            }
+        } while ((read & 0b10000000) != 0);
+
+        return result;
     }
 
     public void skip(int amount) {
-        while (amount-- > 0) {
-            readNext();
-        }
+        pos = checkRemaining(amount) + amount;
     }
 
     public int readShort() {
@@ -174,21 +239,25 @@ public class DataTypeProvider {
     }
 
     public long readLong() {
-        byte[] bytes = readByteArray(8);
-        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        buffer.put(bytes);
-        ((Buffer) buffer).flip();
-        return buffer.getLong();
+        long val = (long) LONG.get(finalFullPacket, checkRemaining(Long.BYTES));
+        pos += Long.BYTES;
+        return val;
     }
 
+    /**
+     * Read an array of the given size into an array of the expected size. Any longs we don't need are skipped, if
+     * fewer were sent than expected the rest are left as zero.
+     */
     public long[] readLongArray(int size, int expected) {
         long[] res = new long[expected];
-        for (int i = 0; i < expected; i++) {
-            res[i] = readLong();
-        }
-        for (int i = 0; i < size - expected; i++) {
-            readLong();
+        byte[] data = finalFullPacket;
+        int p = checkRemaining(Math.multiplyExact(size, Long.BYTES));
+        int count = Math.min(size, expected);
+        for (int i = 0; i < count; i++, p += Long.BYTES) {
+            res[i] = (long) LONG.get(data, p);
         }
+
+        pos += size * Long.BYTES;
         return res;
     }
 
@@ -198,9 +267,12 @@ public class DataTypeProvider {
 
     public int[] readIntArray(int size) {
         int[] res = new int[size];
-        for (int i = 0; i < size; i++) {
-            res[i] = readInt();
+        byte[] data = finalFullPacket;
+        int p = checkRemaining(Math.multiplyExact(size, Integer.BYTES));
+        for (int i = 0; i < size; i++, p += Integer.BYTES) {
+            res[i] = (int) INT.get(data, p);
         }
+        pos = p;
         return res;
     }
 
@@ -227,19 +299,15 @@ public class DataTypeProvider {
     }
 
     public float readFloat() {
-        byte[] bytes = readByteArray(4);
-        ByteBuffer buffer = ByteBuffer.allocate(Float.BYTES);
-        buffer.put(bytes);
-        ((Buffer) buffer).flip();
-        return buffer.getFloat();
+        float val = (float) FLOAT.get(finalFullPacket, checkRemaining(Float.BYTES));
+        pos += Float.BYTES;
+        return val;
     }
 
     public double readDouble() {
-        byte[] bytes = readByteArray(8);
-        ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES);
-        buffer.put(bytes);
-        ((Buffer) buffer).flip();
-        return buffer.getDouble();
+        double val = (double) DOUBLE.get(finalFullPacket, checkRemaining(Double.BYTES));
+        pos += Double.BYTES;
+        return val;
     }
 
     public UUID readUUID() {
@@ -311,8 +379,13 @@ public class DataTypeProvider {
         return new CoordinateDouble3D(readDouble(), readDouble(), readDouble());
     }
 
+    /**
+     * Copy the unread part of this provider into a new array. Bytes that were already read are not included, as the
+     * backing array may hold other packets as well, so the copy starts reading where this one currently is. The copy
+     * is of the same version as this provider.
+     */
     public DataTypeProvider copy() {
-        return new DataTypeProvider(Arrays.copyOf(this.finalFullPacket, this.finalFullPacket.length));
+        return view(Arrays.copyOfRange(this.finalFullPacket, this.pos, this.limit), 0, remaining());
     }
 
     public record Registry(String name, List<RegistryEntry> entries) {}
@@ -340,13 +413,13 @@ public class DataTypeProvider {
     }
 
     public int remaining() {
-        return this.finalFullPacket.length - pos;
+        return this.limit - pos;
     }
 
     @Override
     public String toString() {
         return "DataTypeProvider{" +
-                "finalFullPacket[" + finalFullPacket.length + "]=" + Arrays.toString(finalFullPacket) +
+                "finalFullPacket[" + (limit - pos) + "]=" + Arrays.toString(Arrays.copyOfRange(finalFullPacket, pos, limit)) +
                 ", pos=" + pos +
                 '}';
     }
@@ -1,7 +1,6 @@
 package packets.builder;
 
 import packets.UUID;
-import packets.lib.ByteQueue;
 import proxy.CompressionManager;
 import se.llbit.nbt.SpecificTag;
 
@@ -47,17 +46,24 @@ public class DebugPacketBuilder extends PacketBuilder {
     }
 
     @Override
-    public ByteQueue build() {
+    public byte[] build() {
         System.out.println("Packet[" +String.join(" ", parts) + "]");
         return super.build();
     }
 
     @Override
-    public ByteQueue build(CompressionManager compressionManager) {
+    public byte[] build(CompressionManager compressionManager) {
         System.out.println("Packet[" +String.join(" ", parts) + "]");
         return super.build(compressionManager);
     }
 
+    @Override
+    public void writeBuilder(PacketBuilder other) {
+        super.writeBuilder(other);
+
+        add("Builder[" + other.size() + "]");
+    }
+
     @Override
     public void writeShort(int shortVal) {
         super.writeShort(shortVal);
@@ -4,14 +4,12 @@ import config.Config;
 import config.Option;
 import config.Version;
 import game.protocol.Protocol;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import packets.DataTypeProvider;
 import packets.UUID;
-import packets.handler.ClientBoundConfigurationPacketHandler;
-import packets.handler.PacketHandler;
-import packets.handler.version.ClientBoundConfigurationPacketHandler_1_20_2;
-import packets.handler.version.ClientBoundConfigurationPacketHandler_1_20_6;
-import packets.lib.ByteQueue;
 import proxy.CompressionManager;
 import se.llbit.nbt.NamedTag;
 import se.llbit.nbt.SpecificTag;
@@ -19,16 +17,32 @@ import se.llbit.nbt.SpecificTag;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.BitSet;
 
+/**
+ * Builds packets to send to the client or server. Data is written to a growable array, with some space reserved at the
+ * start for the length prefixes. This way the prefixes can be filled in when the packet is built, without having to
+ * move the data that comes after them.
+ */
 public class PacketBuilder {
-    ByteQueue bytes;
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle FLOAT = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final int MAX_VARINT_SIZE = 5;
+
+    // room for the packet length and the uncompressed data length
+    private static final int HEADER_SIZE = 2 * MAX_VARINT_SIZE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] data;
+    private int end;
 
     public PacketBuilder(int packetId) {
-        this.bytes = new ByteQueue();
+        this();
         writeVarInt(packetId);
     }
 
@@ -37,11 +51,34 @@ public class PacketBuilder {
     }
 
     public PacketBuilder() {
-        this.bytes = new ByteQueue();
+        this.data = new byte[HEADER_SIZE + INITIAL_CAPACITY];
+        this.end = HEADER_SIZE;
     }
 
     public byte[] toArray() {
-        return bytes.toArray();
+        return Arrays.copyOfRange(data, HEADER_SIZE, end);
+    }
+
+    /**
+     * The number of bytes written so far, not including the length prefixes.
+     */
+    public int size() {
+        return end - HEADER_SIZE;
+    }
+
+    /**
+     * Grow the array if needed so that the given number of bytes can be written.
+     */
+    private void ensureCapacity(int length) {
+        if (end + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, end + length));
+        }
+    }
+
+    private void put(byte[] src, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(src, offset, data, end, length);
+        end += length;
     }
 
     public void copy(DataTypeProvider provider, NetworkType... types) {
@@ -87,71 +124,79 @@ public class PacketBuilder {
     }
 
     /**
-     * Method to write a varInt to the given list. Based on: https://wiki.vg/Protocol
+     * Method to write a varInt to the packet. Based on: https://wiki.vg/Protocol
      * @param value the value to write
      */
     public void writeVarInt(int value) {
-        writeVarInt(this.bytes, value);
+        ensureCapacity(MAX_VARINT_SIZE);
+        end = putVarInt(data, end, value);
     }
 
     /**
-     * Method to write a varInt to the given list. Based on: https://wiki.vg/Protocol
-     * @param value the value to write
+     * Method to write a varInt to the given array.
+     * @return the index after the varInt
      */
-    private static void writeVarInt(ByteQueue destination, int value) {
-        do {
-            byte temp = (byte) (value & 0b01111111);
-            // Note: >>> means that the sign bit is shifted with the rest of the number rather than being left alone
+    private static int putVarInt(byte[] destination, int pos, int value) {
+        // Note: >>> means that the sign bit is shifted with the rest of the number rather than being left alone
+        while ((value & ~0b01111111) != 0) {
+            destination[pos++] = (byte) ((value & 0b01111111) | 0b10000000);
             value >>>= 7;
-            if (value != 0) {
-                temp |= 0b10000000;
-            }
-            destination.insert(temp);
-        } while (value != 0);
+        }
+        destination[pos++] = (byte) value;
+        return pos;
     }
 
-    private static ByteQueue createVarInt(int value) {
-        ByteQueue res = new ByteQueue(5);
-        writeVarInt(res, value);
-        return res;
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0b01111111) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Write a varInt into the header, so that it ends right before the given index.
+     * @return the index the varInt starts at
+     */
+    private int prependVarInt(int before, int value) {
+        int start = before - varIntSize(value);
+        putVarInt(data, start, value);
+        return start;
     }
 
     /**
-     * Method to write a string to the given list.
+     * Method to write a string to the packet.
      * @param str   the string to write
      */
     public void writeString(String str) {
-        final byte[][] stringBytes = {null};
-        stringBytes[0] = str.getBytes(StandardCharsets.UTF_8);
-        writeVarInt(stringBytes[0].length);
-        writeByteArray(stringBytes[0]);
+        byte[] stringBytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(stringBytes.length);
+        writeByteArray(stringBytes);
     }
 
     /**
-     * Method to write a byte array to the given list.
+     * Method to write a byte array to the packet.
      * @param arr the bytes to write
      */
     public void writeByteArray(byte[] arr) {
-        for (byte b : arr) {
-            bytes.insert(b);
-        }
+        put(arr, 0, arr.length);
     }
 
     /**
-     * Method to write a the packet length to the start of the given list. This is done by writing the varint to a
-     * different ByteQueue first, as we need to know the size before we can prepend it.
+     * Write the contents of another builder to this packet, without copying them to an intermediate array first.
      */
-    private void prependPacketLength() {
-        int len = bytes.size();
-
-        ByteQueue r = new ByteQueue(5);
-        writeVarInt(r, len);
-        this.bytes.prepend(r);
+    public void writeBuilder(PacketBuilder other) {
+        put(other.data, HEADER_SIZE, other.size());
     }
 
-    public ByteQueue build() {
-        prependPacketLength();
-        return bytes;
+    /**
+     * Build the packet with only the packet length as prefix. The builder itself is not changed, so more data can be
+     * written to it afterwards.
+     */
+    public byte[] build() {
+        int start = prependVarInt(HEADER_SIZE, size());
+        return Arrays.copyOfRange(data, start, end);
     }
 
     /**
@@ -159,62 +204,53 @@ public class PacketBuilder {
      * if it's large enough. The compression manager does compressing, but we still need to prefix the size and let the
      * client know if it was actually compressed.
      */
-    public ByteQueue build(CompressionManager compressionManager) {
+    public byte[] build(CompressionManager compressionManager) {
         if (!compressionManager.isCompressionEnabled()) {
             return build();
         }
 
-        byte[] original = bytes.toArray();
-        byte[] compressed = compressionManager.compressPacket(original);
-
-        // no compression happened
-        if (compressed == original) {
+        int length = size();
+        if (!compressionManager.shouldCompress(length)) {
             // without compression the prefix is packet length + 0 byte
-            ByteQueue prefix = createVarInt(original.length + 1);
-            prefix.insert((byte) 0);
-
-            this.bytes.prepend(prefix);
-        } else {
-            // with compression we need to first prefix a varInt of the uncompressed data length
-            ByteQueue dataLen = createVarInt(original.length);
-
-            // ...and then prefix the length of the entire packet
-            ByteQueue packetLen = createVarInt(dataLen.size() + compressed.length);
+            data[HEADER_SIZE - 1] = 0;
+            int start = prependVarInt(HEADER_SIZE - 1, length + 1);
+            return Arrays.copyOfRange(data, start, end);
+        }
 
-            byte[] res = new byte[compressed.length + dataLen.size() + packetLen.size()];
-            System.arraycopy(packetLen.toArray(), 0, res, 0, packetLen.size());
-            System.arraycopy(dataLen.toArray(), 0, res, packetLen.size(), dataLen.size());
-            System.arraycopy(compressed, 0, res, packetLen.size() + dataLen.size(), compressed.length);
+        // with compression we need to first prefix a varInt of the uncompressed data length, and then the length of
+        // the entire packet. The compressed data is in a pooled buffer, so we only copy it once to the result.
+        ByteBuffer compressed = CompressionManager.zlibCompress(data, HEADER_SIZE, length);
+        int packetLength = varIntSize(length) + compressed.limit();
 
-            return new ByteQueue(res);
-        }
-        return bytes;
+        byte[] res = new byte[varIntSize(packetLength) + packetLength];
+        int pos = putVarInt(res, 0, packetLength);
+        pos = putVarInt(res, pos, length);
+        System.arraycopy(compressed.array(), 0, res, pos, compressed.limit());
+        CompressionManager.releaseCompressed(compressed);
+        return res;
     }
 
     /**
-     * Write a short to the given byte list.
+     * Write a short to the packet.
      * @param shortVal the value of the short
      */
     public void writeShort(int shortVal) {
-        bytes.insert((byte) ((shortVal >>> 8) & 0xFF));
-        bytes.insert((byte) ((shortVal) & 0xFF));
+        ensureCapacity(Short.BYTES);
+        SHORT.set(data, end, (short) shortVal);
+        end += Short.BYTES;
     }
 
     /**
-     * Write an int, needs to split into 4 bytes in the correct order.
+     * Write an int as 4 bytes, big-endian.
      */
     public void writeInt(int val) {
-        byte[] bytes = new byte[4];
-        bytes[3] = (byte) (val & 0xFF);
-        bytes[2] = (byte) (val >> 8 & 0xFF);
-        bytes[1] = (byte) (val >> 16 & 0xFF);
-        bytes[0] = (byte) (val >> 24 & 0xFF);
-
-        writeByteArray(bytes);
+        ensureCapacity(Integer.BYTES);
+        INT.set(data, end, val);
+        end += Integer.BYTES;
     }
 
     public void writeBoolean(boolean val) {
-        bytes.insert((byte) (val ? 0x1 : 0x0));
+        writeByte((byte) (val ? 0x1 : 0x0));
     }
 
     /**
@@ -222,12 +258,7 @@ public class PacketBuilder {
      */
     public void writeNbt(SpecificTag nbt) {
         try {
-            new NamedTag("", nbt).write(new DataOutputStream(new OutputStream() {
-                @Override
-                public void write(int b) {
-                    bytes.insert((byte) b);
-                }
-            }));
+            new NamedTag("", nbt).write(new DataOutputStream(outputStream()));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -237,20 +268,30 @@ public class PacketBuilder {
     public void writeNbtDirect(SpecificTag nbt) {
         try {
             writeByte((byte) nbt.tagType());
-            nbt.write(new DataOutputStream(new OutputStream() {
-                @Override
-                public void write(int b) {
-                    bytes.insert((byte) b);
-                }
-            }));
+            nbt.write(new DataOutputStream(outputStream()));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private OutputStream outputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                ensureCapacity(1);
+                data[end++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                put(b, off, len);
+            }
+        };
+    }
 
     public void writeByte(byte b) {
-        bytes.insert(b);
+        ensureCapacity(1);
+        data[end++] = b;
     }
 
     public void writeUUID(UUID uuid) {
@@ -259,28 +300,23 @@ public class PacketBuilder {
     }
 
     public void writeLong(long val) {
-        byte[] bytes = new byte[8];
-        bytes[7] = (byte) (val & 0xFF);
-        bytes[6] = (byte) (val >> 8 & 0xFF);
-        bytes[5] = (byte) (val >> 16 & 0xFF);
-        bytes[4] = (byte) (val >> 24 & 0xFF);
-        bytes[3] = (byte) (val >> 32 & 0xFF);
-        bytes[2] = (byte) (val >> 40 & 0xFF);
-        bytes[1] = (byte) (val >> 48 & 0xFF);
-        bytes[0] = (byte) (val >> 56 & 0xFF);
-
-        writeByteArray(bytes);
+        ensureCapacity(Long.BYTES);
+        LONG.set(data, end, val);
+        end += Long.BYTES;
     }
 
     public void writeVarIntArray(int[] arr) {
+        ensureCapacity(arr.length * MAX_VARINT_SIZE);
         for (int val : arr) {
-            writeVarInt(val);
+            end = putVarInt(data, end, val);
         }
     }
 
     public void writeLongArray(long[] arr) {
+        ensureCapacity(arr.length * Long.BYTES);
         for (long val : arr) {
-            writeLong(val);
+            LONG.set(data, end, val);
+            end += Long.BYTES;
         }
     }
 
@@ -291,16 +327,17 @@ public class PacketBuilder {
     }
 
     public void writeIntArray(int[] arr) {
-        for (int i : arr) {
-            writeInt(i);
+        ensureCapacity(arr.length * Integer.BYTES);
+        for (int val : arr) {
+            INT.set(data, end, val);
+            end += Integer.BYTES;
         }
     }
 
     public void writeFloat(float val) {
-        ByteBuffer buffer = ByteBuffer.allocate(Float.BYTES);
-        buffer.putFloat(val);
-        ((Buffer) buffer).flip();
-        writeByteArray(buffer.array());
+        ensureCapacity(Float.BYTES);
+        FLOAT.set(data, end, val);
+        end += Float.BYTES;
     }
 
     public void writeBitSet(BitSet bits) {
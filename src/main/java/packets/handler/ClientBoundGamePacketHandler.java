@@ -2,6 +2,7 @@ package packets.handler;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import config.Config;
 import config.Option;
@@ -19,6 +20,11 @@ import proxy.ConnectionManager;
 import se.llbit.nbt.SpecificTag;
 
 public class ClientBoundGamePacketHandler extends PacketHandler {
+    // packets that may be dropped or replaced, or that change the connection state
+    private static final Set<String> SYNCHRONOUS = Set.of(
+        "Login", "ForgetLevelChunk", "SetChunkCacheRadius", "StartConfiguration", "ChunkBatchStart", "ChunkBatchFinished"
+    );
+
     private final HashMap<String, PacketOperator> operations = new HashMap<>();
     public ClientBoundGamePacketHandler(ConnectionManager connectionManager) {
         super(connectionManager);
@@ -175,6 +181,17 @@ public class ClientBoundGamePacketHandler extends PacketHandler {
 
             return dist > Config.getExtendedRenderDistance();
         });
+
+        // chunk batches are tracked so that we can send our own chunks in between
+        operations.put("ChunkBatchStart", provider -> {
+            getConnectionManager().getEncryptionManager().getPacketInjector().onServerBatchStart();
+            return true;
+        });
+
+        operations.put("ChunkBatchFinished", provider -> {
+            getConnectionManager().getEncryptionManager().getPacketInjector().onServerBatchFinished(provider.readVarInt());
+            return false;
+        });
     }
 
     public static PacketHandler of(ConnectionManager connectionManager) {
@@ -191,6 +208,11 @@ public class ClientBoundGamePacketHandler extends PacketHandler {
         );
     }
 
+    @Override
+    protected boolean isSynchronous(String packetType) {
+        return SYNCHRONOUS.contains(packetType);
+    }
+
     @Override
     public Map<String, PacketOperator> getOperators() {
         return operations;
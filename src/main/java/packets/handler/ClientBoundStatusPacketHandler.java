@@ -6,17 +6,29 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class ClientBoundStatusPacketHandler extends PacketHandler {
+    private final HashMap<String, PacketOperator> operations = new HashMap<>();
+
     public ClientBoundStatusPacketHandler(ConnectionManager connectionManager) {
         super(connectionManager);
+
+        operations.put("StatusResponse", provider -> {
+            getConnectionManager().onStatusResponse(provider.readString());
+            return true;
+        });
     }
 
     @Override
     public Map<String, PacketOperator> getOperators() {
-        return new HashMap<>();
+        return operations;
     }
 
     @Override
     public boolean isClientBound() {
         return true;
     }
+
+    @Override
+    protected boolean isSynchronous(String packetType) {
+        return false;
+    }
 }
@@ -1,27 +1,37 @@
 package packets.handler;
 
-import game.protocol.HandshakeProtocol;
-import game.protocol.Protocol;
 import packets.DataProvider;
 import packets.DataTypeProvider;
 import proxy.ConnectionManager;
+import proxy.metrics.Metrics;
+import proxy.metrics.PacketStats;
 
 import javax.naming.SizeLimitExceededException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Family of classes to handle incoming packets and perform appropriate actions based on the packet type and contents.
  */
 public abstract class PacketHandler {
-    private final ConnectionManager connectionManager;
+    // packet IDs are VarInts, but stay well below this in every supported version
+    private static final int MAX_PACKET_ID = 0x100;
 
-    protected static Protocol protocol = new HandshakeProtocol();
+    private static final CompletableFuture<Boolean> FORWARD = CompletableFuture.completedFuture(true);
+    private static final CompletableFuture<Boolean> DROP = CompletableFuture.completedFuture(false);
 
-    public static void setProtocol(Protocol protocol) {
-        PacketHandler.protocol = protocol;
-    }
+    private final ConnectionManager connectionManager;
 
     private DataProvider reader;
+    private ExecutorService parser;
+
+    // operators indexed by packet ID for the current protocol, built when the handler is activated
+    private PacketOperator[] operatorsById;
+    private boolean[] synchronousById;
+
+    // only set when metrics are enabled
+    private PacketStats[] statsById;
 
     public PacketHandler(ConnectionManager connectionManager) {
         this.connectionManager = connectionManager;
@@ -34,28 +44,84 @@ public abstract class PacketHandler {
     /**
      * Build the given packet, will generate a type provider to parse the contents of the packages to real values. Will
      * determine if the packet is to be forwarded using its return value.
+     * <p>
+     * Packets are parsed on the parser thread, so that parsing does not delay forwarding. Most packets are forwarded
+     * as-is, so they are handed off to the parser and forwarded right away. Packets marked as synchronous (which may
+     * be dropped or replaced, or that change the connection state) are only forwarded once they have been parsed, so
+     * for those the returned result completes later. As there is only one parser thread, packets are always parsed in
+     * the order they were received.
      *
-     * @param size the size of the packet to build
-     * @return true if the packet should be forwarded, otherwise false.
+     * @param data   the array containing the packet, which should not be modified after this call
+     * @param offset the start of the packet in the array
+     * @param size   the size of the packet to build
+     * @return completes with true if the packet should be forwarded, otherwise false.
      */
-    public final boolean handle(int size) {
-        DataTypeProvider typeProvider;
+    public final CompletableFuture<Boolean> handle(byte[] data, int offset, int size) {
+        // most packets are not handled, so we look at the ID first to avoid decompressing them entirely
+        int packetID;
         try {
-            typeProvider = reader.withSize(size);
+            packetID = reader.readPacketId(data, offset, size);
         } catch (SizeLimitExceededException ex) {
             System.out.println(ex.getMessage());
-            return false;
+            return DROP;
+        }
+
+        if (packetID < 0 || packetID >= MAX_PACKET_ID) {
+            return FORWARD;
         }
 
-        int packetID = typeProvider.readVarInt();
+        PacketStats stats = statsById == null ? null : statsById[packetID];
+        if (stats != null) {
+            stats.onPacket(size);
+        }
 
-        String packetType = protocol.get(packetID, isClientBound());
-        PacketOperator operator = getOperators().getOrDefault(packetType, null);
+        PacketOperator operator = operatorsById[packetID];
         if (operator == null) {
+            return FORWARD;
+        }
+
+        // compression may be disabled by the time the packet is parsed, so we check it now
+        boolean compressed = reader.isCompressionEnabled();
+        if (!synchronousById[packetID]) {
+            parser.execute(() -> parse(operator, stats, data, offset, size, compressed));
+            return FORWARD;
+        }
+
+        return CompletableFuture.supplyAsync(() -> parse(operator, stats, data, offset, size, compressed), parser);
+    }
+
+    private boolean parse(PacketOperator operator, PacketStats stats, byte[] data, int offset, int size, boolean compressed) {
+        try {
+            DataTypeProvider typeProvider = reader.withFrame(data, offset, size, compressed);
+            if (stats == null) {
+                // skip the packet ID, we already have it
+                typeProvider.readVarInt();
+                return operator.apply(typeProvider);
+            }
+
+            int decompressedSize = typeProvider.remaining();
+            typeProvider.readVarInt();
+
+            long start = System.nanoTime();
+            boolean forward = operator.apply(typeProvider);
+            stats.onParsed(decompressedSize, System.nanoTime() - start);
+            return forward;
+        } catch (SizeLimitExceededException ex) {
+            System.out.println(ex.getMessage());
+            return false;
+        } catch (Exception ex) {
+            ex.printStackTrace();
             return true;
         }
+    }
 
-        return operator.apply(typeProvider);
+    /**
+     * Whether the given packet needs to be parsed before it can be forwarded. This is the case when the operator may
+     * drop or replace the packet, or when it changes how the following packets are read. By default all packets are
+     * synchronous, handlers for busy states can list the packets that are not.
+     */
+    protected boolean isSynchronous(String packetType) {
+        return true;
     }
 
     public int indexOf(byte[] outerArray, byte[] smallerArray) {
@@ -76,8 +142,40 @@ public abstract class PacketHandler {
 
     public abstract boolean isClientBound();
 
-    public void setReader(DataProvider reader) {
+    /**
+     * Set the reader for this handler. This is called when the handler becomes active after the connection mode
+     * changes, at which point the protocol for the new mode is known.
+     */
+    public void setReader(DataProvider reader, ExecutorService parser) {
         this.reader = reader;
         this.reader.setCompressionManager(connectionManager.getCompressionManager());
+        this.parser = parser;
+
+        buildDispatchTable();
+    }
+
+    /**
+     * Resolve the operators to packet IDs of the current protocol, so that handling a packet only takes an array
+     * lookup instead of finding its name first.
+     */
+    private void buildDispatchTable() {
+        operatorsById = new PacketOperator[MAX_PACKET_ID];
+        synchronousById = new boolean[MAX_PACKET_ID];
+        statsById = Metrics.isEnabled() ? new PacketStats[MAX_PACKET_ID] : null;
+
+        Map<String, PacketOperator> operators = getOperators();
+        for (int id = 0; id < MAX_PACKET_ID; id++) {
+            String packetType = connectionManager.getProtocol().get(id, isClientBound());
+            if (statsById != null) {
+                String name = packetType == null ? String.format("0x%02x", id) : packetType;
+                statsById[id] = Metrics.packet(isClientBound(), name);
+            }
+
+            PacketOperator operator = operators.get(packetType);
+            if (operator != null) {
+                operatorsById[id] = operator;
+                synchronousById[id] = isSynchronous(packetType);
+            }
+        }
     }
 }
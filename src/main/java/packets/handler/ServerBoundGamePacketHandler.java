@@ -4,6 +4,7 @@ import config.Version;
 import game.NetworkMode;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import config.Config;
 import game.data.WorldManager;
@@ -12,6 +13,9 @@ import game.data.coordinates.CoordinateDouble3D;
 import proxy.ConnectionManager;
 
 public class ServerBoundGamePacketHandler extends PacketHandler {
+    // packets that may be dropped, or that change the connection state
+    private static final Set<String> SYNCHRONOUS = Set.of("ConfigurationAcknowledged", "ChunkBatchReceived");
+
     private HashMap<String, PacketOperator> operations = new HashMap<>();
     public ServerBoundGamePacketHandler(ConnectionManager connectionManager) {
         super(connectionManager);
@@ -84,12 +88,22 @@ public class ServerBoundGamePacketHandler extends PacketHandler {
             return true;
         });
 
+        // acknowledgements for chunk batches sent by us should not reach the server
+        operations.put("ChunkBatchReceived", provider -> {
+            return getConnectionManager().getEncryptionManager().getPacketInjector().onBatchReceived(provider.readFloat());
+        });
+
         operations.put("ConfigurationAcknowledged", provider ->{
             getConnectionManager().setMode(NetworkMode.CONFIGURATION);
             return true;
         });
     }
 
+    @Override
+    protected boolean isSynchronous(String packetType) {
+        return SYNCHRONOUS.contains(packetType);
+    }
+
     @Override
     public Map<String, PacketOperator> getOperators() {
         return operations;
@@ -1,6 +1,5 @@
 package packets.handler;
 
-import config.Config;
 import game.NetworkMode;
 import proxy.ConnectionManager;
 
@@ -27,8 +26,13 @@ public class ServerBoundHandshakePacketHandler extends PacketHandler {
                     break;
             }
 
-            Config.setProtocolVersion(protocolVersion);
-            getConnectionManager().getEncryptionManager().sendMaskedHandshake(protocolVersion, nextMode, getHostExtensions(host));
+            boolean answerLocally = nextMode == 1 && getConnectionManager().answerStatusLocally(protocolVersion);
+
+            getConnectionManager().setProtocolVersion(protocolVersion);
+            if (!answerLocally) {
+                getConnectionManager().getEncryptionManager().sendMaskedHandshake(protocolVersion, nextMode, getHostExtensions(host));
+                getConnectionManager().connectToServer();
+            }
             return false;
         });
     }
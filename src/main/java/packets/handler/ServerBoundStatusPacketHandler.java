@@ -1,18 +1,45 @@
 package packets.handler;
 
+import packets.builder.PacketBuilder;
 import proxy.ConnectionManager;
 
 import java.util.HashMap;
 import java.util.Map;
 
 public class ServerBoundStatusPacketHandler extends PacketHandler {
+    private final HashMap<String, PacketOperator> operations = new HashMap<>();
+
     public ServerBoundStatusPacketHandler(ConnectionManager connectionManager) {
         super(connectionManager);
+
+        // when we have a cached status, the server is never connected to so we answer both requests ourselves
+        operations.put("StatusRequest", provider -> {
+            String status = getConnectionManager().getLocalStatus();
+            if (status == null) {
+                return true;
+            }
+
+            PacketBuilder response = new PacketBuilder(0x00);
+            response.writeString(status);
+            getConnectionManager().getEncryptionManager().sendImmediately(response);
+            return false;
+        });
+
+        operations.put("PingRequest", provider -> {
+            if (getConnectionManager().getLocalStatus() == null) {
+                return true;
+            }
+
+            PacketBuilder pong = new PacketBuilder(0x01);
+            pong.writeLong(provider.readLong());
+            getConnectionManager().getEncryptionManager().sendImmediately(pong);
+            return false;
+        });
     }
 
     @Override
     public Map<String, PacketOperator> getOperators() {
-        return new HashMap<>();
+        return operations;
     }
 
     @Override
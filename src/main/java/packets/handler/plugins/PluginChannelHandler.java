@@ -3,20 +3,20 @@ package packets.handler.plugins;
 import config.Config;
 import config.Option;
 import config.Version;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import packets.DataTypeProvider;
 
 public abstract class PluginChannelHandler {
 
-    private static PluginChannelHandler instance;
+    // sessions may be on different versions, so there is one handler per data version
+    private static final Map<Integer, PluginChannelHandler> instances = new ConcurrentHashMap<>();
 
     public static PluginChannelHandler getInstance() {
-        if (instance == null) {
-            instance = Config.versionReporter().select(PluginChannelHandler.class,
-                   Option.of(Version.V1_12, PluginChannelHandler1_12::new),
-                   Option.of(Version.ANY, DefaultPluginChannelHandler::new)
-            );
-        }
-        return instance;
+        return instances.computeIfAbsent(Config.getDataVersion(), v -> Config.versionReporter().select(PluginChannelHandler.class,
+                Option.of(Version.V1_12, PluginChannelHandler1_12::new),
+                Option.of(Version.ANY, DefaultPluginChannelHandler::new)
+        ));
     }
 
     public abstract void handleCustomPayload(DataTypeProvider provider);
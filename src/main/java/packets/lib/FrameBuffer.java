@@ -0,0 +1,100 @@
+package packets.lib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Growable byte buffer used to split the network stream into packets. Incoming data is appended at the end, and
+ * complete packets can be read straight from the backing array without copying them.
+ * <p>
+ * Bytes are never overwritten once written. When the end of the array is reached, the unread remainder is moved to
+ * a fresh array instead of to the start of the current one. This means views on earlier packets remain valid even
+ * when they are handed to other threads for parsing, the old array is left to the garbage collector once no view
+ * refers to it anymore.
+ */
+public class FrameBuffer {
+    private final int segmentSize;
+    private byte[] data;
+    private int readIndex;
+    private int writeIndex;
+
+    /**
+     * @param segmentSize the size of the arrays to allocate. Larger packets will get an array of their own size.
+     */
+    public FrameBuffer(int segmentSize) {
+        this.segmentSize = segmentSize;
+        this.data = new byte[segmentSize];
+    }
+
+    /**
+     * Append bytes to the end of the buffer.
+     */
+    public void write(byte[] src, int offset, int length) {
+        ensureWritable(length);
+
+        System.arraycopy(src, offset, data, writeIndex, length);
+        writeIndex += length;
+    }
+
+    /**
+     * Append the remaining bytes of the given buffer to the end of this buffer.
+     */
+    public void write(ByteBuffer src) {
+        int length = src.remaining();
+        ensureWritable(length);
+
+        src.get(data, writeIndex, length);
+        writeIndex += length;
+    }
+
+    /**
+     * Make sure the given number of bytes can be written after the current end of the buffer. If they do not fit,
+     * the unread bytes are moved to a new array.
+     */
+    public void ensureWritable(int length) {
+        if (writeIndex + length <= data.length) {
+            return;
+        }
+
+        int unread = readable();
+        byte[] next = new byte[Math.max(segmentSize, unread + length)];
+        System.arraycopy(data, readIndex, next, 0, unread);
+
+        data = next;
+        readIndex = 0;
+        writeIndex = unread;
+    }
+
+    /**
+     * Mark the given number of bytes as read. Only advances the read index, the bytes themselves are left as-is.
+     */
+    public void skip(int length) {
+        if (length > readable()) {
+            throw new IndexOutOfBoundsException("Cannot skip " + length + " bytes, only " + readable() + " available");
+        }
+        readIndex += length;
+    }
+
+    /**
+     * The current backing array. Note that this changes when the buffer runs out of space, so it should be fetched
+     * again after writing.
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    public int readIndex() {
+        return readIndex;
+    }
+
+    public int writeIndex() {
+        return writeIndex;
+    }
+
+    public int readable() {
+        return writeIndex - readIndex;
+    }
+
+    public boolean isEmpty() {
+        return readIndex == writeIndex;
+    }
+}
@@ -11,9 +11,13 @@ public class DataTypeProvider_1_13 extends DataTypeProvider {
         super(finalFullPacket);
     }
 
+    public DataTypeProvider_1_13(byte[] finalFullPacket, int offset, int length) {
+        super(finalFullPacket, offset, length);
+    }
+
     @Override
-    public DataTypeProvider ofLength(int length) {
-        return new DataTypeProvider_1_13(this.readByteArray(length));
+    protected DataTypeProvider view(byte[] data, int offset, int length) {
+        return new DataTypeProvider_1_13(data, offset, length);
     }
 
     @Override
@@ -8,6 +8,10 @@ public class DataTypeProvider_1_14 extends DataTypeProvider_1_13 {
         super(finalFullPacket);
     }
 
+    public DataTypeProvider_1_14(byte[] finalFullPacket, int offset, int length) {
+        super(finalFullPacket, offset, length);
+    }
+
     @Override
     public Coordinate3D readCoordinates() {
         long val = readLong();
@@ -19,7 +23,7 @@ public class DataTypeProvider_1_14 extends DataTypeProvider_1_13 {
     }
 
     @Override
-    public DataTypeProvider ofLength(int length) {
-        return new DataTypeProvider_1_14(this.readByteArray(length));
+    protected DataTypeProvider view(byte[] data, int offset, int length) {
+        return new DataTypeProvider_1_14(data, offset, length);
     }
 }
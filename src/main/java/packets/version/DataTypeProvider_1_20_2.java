@@ -11,6 +11,10 @@ public class DataTypeProvider_1_20_2 extends DataTypeProvider_1_14 {
         super(finalFullPacket);
     }
 
+    public DataTypeProvider_1_20_2(byte[] finalFullPacket, int offset, int length) {
+        super(finalFullPacket, offset, length);
+    }
+
     public SpecificTag readNbtTag() {
         try {
             return (SpecificTag) SpecificTag.read(readNext(), new DataInputStream(new InputStream() {
@@ -26,7 +30,7 @@ public class DataTypeProvider_1_20_2 extends DataTypeProvider_1_14 {
     }
 
     @Override
-    public DataTypeProvider ofLength(int length) {
-        return new DataTypeProvider_1_20_2(this.readByteArray(length));
+    protected DataTypeProvider view(byte[] data, int offset, int length) {
+        return new DataTypeProvider_1_20_2(data, offset, length);
     }
 }
@@ -1,12 +1,17 @@
 package packets.version;
 
 import game.data.container.Slot;
+import packets.DataTypeProvider;
 
 public class DataTypeProvider_1_20_6 extends DataTypeProvider_1_20_2 {
     public DataTypeProvider_1_20_6(byte[] finalFullPacket) {
         super(finalFullPacket);
     }
 
+    public DataTypeProvider_1_20_6(byte[] finalFullPacket, int offset, int length) {
+        super(finalFullPacket, offset, length);
+    }
+
     @Override
     public Slot readSlot() {
         int count = readVarInt();
@@ -18,5 +23,8 @@ public class DataTypeProvider_1_20_6 extends DataTypeProvider_1_20_2 {
         return null;
     }
 
-
+    @Override
+    protected DataTypeProvider view(byte[] data, int offset, int length) {
+        return new DataTypeProvider_1_20_6(data, offset, length);
+    }
 }
@@ -0,0 +1,41 @@
+package proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of equally sized direct byte buffers. Direct buffers are expensive to allocate and are only released by the
+ * garbage collector, so the proxy hands out the same few buffers for every read instead of allocating new ones.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+
+    public BufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Get a cleared buffer from the pool, or allocate a new one if none are available.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer should not be used by the caller after this.
+     */
+    public void release(ByteBuffer buffer) {
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
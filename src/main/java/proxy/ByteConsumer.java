@@ -1,10 +1,7 @@
 package proxy;
 
-import packets.lib.ByteQueue;
-
 import java.io.IOException;
-import java.util.Queue;
 
 public interface ByteConsumer {
-    void consume(ByteQueue arr) throws IOException;
+    void consume(byte[] arr, int offset, int length) throws IOException;
 }
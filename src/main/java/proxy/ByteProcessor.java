@@ -0,0 +1,5 @@
+package proxy;
+
+public interface ByteProcessor {
+    void process(byte[] arr, int offset, int length);
+}
@@ -0,0 +1,175 @@
+package proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Output stream on top of a non-blocking socket channel. Written data is collected in a buffer and only written to
+ * the channel when the stream is flushed, so that the packets handled in one go are sent using a single write instead
+ * of one per packet. Whatever the socket cannot take right away is kept until the proxy's selector reports the channel
+ * as writable again. This way writing never blocks the proxy thread.
+ * <p>
+ * If an encoder is set, it is applied to the buffered data just before it is written, so that it runs over the
+ * combined data rather than over each packet separately.
+ */
+public class ChannelOutputStream extends OutputStream {
+    private static final int INITIAL_SIZE = 1 << 16;
+
+    // flush early when this much data is waiting, so large amounts of data are not held back
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
+    private SocketChannel channel;
+    private final ProxySession session;
+    private ByteProcessor encoder;
+
+    // bytes before start have been written, bytes before encoded have been passed through the encoder
+    private byte[] data;
+    private int start;
+    private int encoded;
+    private int end;
+    private ByteBuffer wrapped;
+    private boolean waitingForChannel;
+
+    ChannelOutputStream(SocketChannel channel, ProxySession session) {
+        this(session);
+        this.channel = channel;
+    }
+
+    /**
+     * Create a stream without a channel yet. Data written to it is kept until the channel is set and connected.
+     */
+    ChannelOutputStream(ProxySession session) {
+        this.session = session;
+        this.data = new byte[INITIAL_SIZE];
+        this.wrapped = ByteBuffer.wrap(data);
+    }
+
+    synchronized void setChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) { return; }
+
+        ensureWritable(len);
+        System.arraycopy(b, off, data, end, len);
+        end += len;
+
+        if (end - encoded >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Make room for the given number of bytes, first by dropping the bytes that have already been written and then
+     * by growing the buffer.
+     */
+    private void ensureWritable(int len) {
+        if (end + len <= data.length) {
+            return;
+        }
+
+        if (start > 0) {
+            System.arraycopy(data, start, data, 0, end - start);
+            encoded -= start;
+            end -= start;
+            start = 0;
+        }
+
+        if (end + len > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, end + len));
+            wrapped = ByteBuffer.wrap(data);
+        }
+    }
+
+    /**
+     * Set the encoder to apply to all data written after this call. Data written before is not affected, even if it
+     * has not been sent yet.
+     */
+    public synchronized void setEncoder(ByteProcessor encoder) {
+        encode();
+        this.encoder = encoder;
+    }
+
+    private void encode() {
+        if (encoder != null && encoded < end) {
+            encoder.process(data, encoded, end - encoded);
+        }
+        encoded = end;
+    }
+
+    /**
+     * Write the buffered data to the channel. If the channel cannot take everything, the rest is written once the
+     * selector reports it is writable.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        encode();
+
+        // data written before the channel is connected is sent once it is
+        if (channel == null || !channel.isConnected()) {
+            return;
+        }
+
+        // if we're already waiting for the channel, the selector will pick up the new data
+        if (waitingForChannel || writeToChannel()) {
+            return;
+        }
+
+        waitingForChannel = true;
+        session.onPendingWrite(channel);
+    }
+
+    /**
+     * Write as much of the pending data as the channel will accept.
+     * @return true if all pending data has been written
+     */
+    synchronized boolean flushPending() throws IOException {
+        encode();
+        if (!writeToChannel()) {
+            return false;
+        }
+
+        waitingForChannel = false;
+        return true;
+    }
+
+    /**
+     * @return true if all encoded data has been written
+     */
+    private boolean writeToChannel() throws IOException {
+        if (start < encoded) {
+            wrapped.limit(encoded).position(start);
+            start += channel.write(wrapped);
+        }
+
+        if (start == end) {
+            start = encoded = end = 0;
+        }
+        return start == encoded;
+    }
+
+    /**
+     * The number of bytes that have been written to this stream but not yet to the socket.
+     */
+    synchronized int pendingBytes() {
+        return end - start;
+    }
+
+    /**
+     * Closing either side of the proxy ends the session, as there is nothing left to forward.
+     */
+    @Override
+    public void close() {
+        session.close();
+    }
+}
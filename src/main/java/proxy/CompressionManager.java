@@ -1,16 +1,30 @@
 package proxy;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
 
 public class CompressionManager {
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    private static final int DEFLATE_BUFFER_SIZE = 1 << 16;
+
+    // zlib contexts are expensive to create, so a few are kept to re-use. These are not kept per thread, as compression
+    // also happens on virtual threads which only live for a single task.
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<byte[]> DEFLATE_BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
     private int compressionLimit = 0;
     private boolean compressionEnabled = false;
 
@@ -20,33 +34,158 @@ public class CompressionManager {
     }
 
     /**
-     * Compresses the stream if the size is greater than the compression limit.
-     * Source: https://dzone.com/articles/how-compress-and-uncompress
+     * Compresses the given data. The deflater is taken from a pool and re-used, as creating a new one allocates a
+     * native zlib context every time.
+     */
+    public static byte[] zlibCompress(byte[] input) {
+        ByteBuffer compressed = zlibCompress(input, 0, input.length);
+        byte[] res = Arrays.copyOf(compressed.array(), compressed.limit());
+        releaseCompressed(compressed);
+        return res;
+    }
+
+    /**
+     * Compresses the given range into a pooled output buffer, so that large packets do not need a new output array
+     * every time. The caller should copy the data out and then return the buffer using {@link #releaseCompressed}.
+     * @return a buffer containing the compressed data from index 0 up to its limit
      */
-    public static byte[] zlibCompress(byte[] input) throws IOException {
-        Deflater deflater = new Deflater();
-        deflater.setInput(input);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length);
+    public static ByteBuffer zlibCompress(byte[] input, int offset, int length) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        deflater.setInput(input, offset, length);
         deflater.finish();
-        byte[] buffer = new byte[1024];
+
+        // compressed data is nearly always smaller than the input, if not we grow the output
+        byte[] output = DEFLATE_BUFFERS.poll();
+        if (output == null) {
+            output = new byte[DEFLATE_BUFFER_SIZE];
+        }
+        int size = 0;
         while (!deflater.finished()) {
-            int count = deflater.deflate(buffer); // returns the generated code... index
-            outputStream.write(buffer, 0, count);
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    /**
+     * Return a buffer given out by {@link #zlibCompress(byte[], int, int)} to the pool. The buffer should not be used
+     * by the caller after this.
+     */
+    public static void releaseCompressed(ByteBuffer compressed) {
+        DEFLATE_BUFFERS.offer(compressed.array());
+    }
+
+    private static Inflater acquireInflater(byte[] input, int offset, int length) {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.setInput(input, offset, length);
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
         }
-        outputStream.close();
-        return outputStream.toByteArray();
     }
 
     public static byte[] zlibDecompress(byte[] input) {
-        InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(input));
+        return zlibDecompress(input, 0, input.length);
+    }
+
+    /**
+     * Decompress data of unknown size. If the size is known, {@link #zlibDecompress(byte[], int, int, int)} should
+     * be used instead as it avoids growing the output.
+     */
+    public static byte[] zlibDecompress(byte[] input, int offset, int length) {
+        Inflater inflater = acquireInflater(input, offset, length);
 
+        byte[] output = new byte[Math.max(length * 4, MIN_BUFFER_SIZE)];
+        int size = 0;
         try {
-            return IOUtils.toByteArray(inflater);
-        } catch (IOException e) {
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Unexpected end of compressed data");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
             e.printStackTrace();
             System.out.println("Could not decompress");
+            return new byte[0];
+        } finally {
+            releaseInflater(inflater);
+        }
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Decompress data of which the decompressed size is known in advance, like packets. The data is inflated
+     * directly into an array of the given size.
+     */
+    public static byte[] zlibDecompress(byte[] input, int offset, int length, int uncompressedSize) {
+        Inflater inflater = acquireInflater(input, offset, length);
+
+        byte[] output = new byte[uncompressedSize];
+        try {
+            int size = 0;
+            while (size < uncompressedSize) {
+                int inflated = inflater.inflate(output, size, uncompressedSize - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+
+            if (size != uncompressedSize) {
+                throw new DataFormatException("Expected " + uncompressedSize + " bytes but got " + size);
+            }
+        } catch (DataFormatException e) {
+            e.printStackTrace();
+            System.out.println("Could not decompress");
+            return new byte[0];
+        } finally {
+            releaseInflater(inflater);
+        }
+        return output;
+    }
+
+    /**
+     * Decompress only the start of the given data, until the output array is full. As zlib decompresses sequentially,
+     * this is much cheaper than decompressing everything when only the first few bytes are needed.
+     * @return the number of bytes written to the output, which may be less than its size if the data is shorter
+     */
+    public static int zlibDecompressPrefix(byte[] input, int offset, int length, byte[] output) throws DataFormatException {
+        Inflater inflater = acquireInflater(input, offset, length);
+        try {
+            int size = 0;
+            while (size < output.length) {
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            return size;
+        } finally {
+            releaseInflater(inflater);
         }
-        return new byte[0];
     }
 
     // Source: https://stackoverflow.com/a/44922240
@@ -83,46 +222,36 @@ public class CompressionManager {
 
 
     /**
-     * Compressed a packet if it's over the limit. Otherwise, the original is returned. Will also return
-     * the original if something goes wrong during compression, but that will surely never happen.
+     * Compressed a packet if it's over the limit. Otherwise, the original is returned.
      */
     public byte[] compressPacket(byte[] input) {
-        if (!compressionEnabled || input.length <= compressionLimit) {
+        if (!shouldCompress(input.length)) {
             return input;
         }
 
-        try {
-            return zlibCompress(input);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return input;
-        }
+        return zlibCompress(input);
     }
 
     /**
      * Decompress the given input.
-     * @param input  the input data
-     * @param offset the offset to start decompression from
-     * @param len    the length of the compressed data. When 0, no decompression will be done.
+     * @param input            the input data
+     * @param offset           the offset to start decompression from
+     * @param length           the length of the compressed data
+     * @param uncompressedSize the decompressed size, as given in the packet
      * @return the decompressed data
      */
-    public byte[] decompressPacket(byte[] input, int offset, int len) {
-        if (!compressionEnabled) {
-            return input;
-        }
+    public byte[] decompressPacket(byte[] input, int offset, int length, int uncompressedSize) {
+        return zlibDecompress(input, offset, length, uncompressedSize);
+    }
 
-        if (len == 0) {
-            byte[] res = new byte[input.length - offset];
-            System.arraycopy(input, offset, res, 0, res.length);
-            return res;
-        }
 
-        byte[] toDecompress = new byte[input.length - offset];
-        System.arraycopy(input, offset, toDecompress, 0, toDecompress.length);
-        return zlibDecompress(toDecompress);
+    /**
+     * Packets are only compressed if they are over the limit set by the server.
+     */
+    public boolean shouldCompress(int length) {
+        return compressionEnabled && length > compressionLimit;
     }
 
-
     public boolean isCompressionEnabled() {
         return compressionEnabled;
     }
@@ -6,34 +6,55 @@ import org.xbill.DNS.SRVRecord;
 import org.xbill.DNS.Type;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static util.ExceptionHandling.attempt;
 
+/**
+ * Address of the server to connect to. The address is resolved once when the details are created, including the SRV
+ * lookup, and cached so that connecting does not have to wait for DNS. Once the cached address expires, the next
+ * caller still gets it while it is resolved again in the background.
+ */
 public class ConnectionDetails {
     private final int DEFAULT_PORT = 25565;
 
-    private String host;
-    private int portRemote;
+    // used when there is no SRV record to take the TTL from, as Java does not tell us the TTL of regular lookups
+    private static final long DEFAULT_TTL_SECONDS = 60;
+
+    private final String configuredHost;
+    private final int configuredPort;
+    private final boolean performSrvLookup;
+
+    private volatile String host;
+    private volatile int portRemote;
     private int portLocal;
 
+    private volatile InetSocketAddress remoteAddress;
+    private volatile long resolvedAt;
+    private volatile long ttlNanos;
+    private final AtomicBoolean resolving = new AtomicBoolean();
+
     public ConnectionDetails(String host, int portLocal, boolean performSrvLookup) {
-        this.portRemote = DEFAULT_PORT;
+        int port = DEFAULT_PORT;
 
         if (host.contains(":")) {
             String[] hostParts = host.split(":");
-            this.host = hostParts[0];
+            host = hostParts[0];
 
-            attempt(() -> this.portRemote = Integer.parseInt(hostParts[1]));
-        } else {
-            this.host = host;
+            try {
+                port = Integer.parseInt(hostParts[1]);
+            } catch (NumberFormatException ex) {
+                ex.printStackTrace();
+            }
         }
+        this.configuredHost = host;
+        this.configuredPort = port;
         this.portLocal = portLocal;
+        this.performSrvLookup = performSrvLookup;
 
-        if (performSrvLookup) {
-            performSrvLookup();
-        }
+        resolve();
     }
 
     public String getFriendlyHost() {
@@ -52,12 +73,50 @@ public class ConnectionDetails {
         return portLocal;
     }
 
-    public ServerSocket getServerSocket() throws IOException {
-        return new ServerSocket(getPortLocal());
+    public ServerSocketChannel getServerSocketChannel() throws IOException {
+        return ServerSocketChannel.open().bind(new InetSocketAddress(getPortLocal()));
     }
 
-    public Socket getClientSocket() throws IOException {
-        return new Socket(host, portRemote);
+    /**
+     * Get the resolved address of the server. If the cached address has expired or could not be resolved, it is
+     * returned anyway and a new lookup is started in the background.
+     */
+    public InetSocketAddress getRemoteAddress() {
+        boolean expired = remoteAddress.isUnresolved() || System.nanoTime() - resolvedAt > ttlNanos;
+        if (expired && resolving.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("DNS Lookup").start(() -> {
+                try {
+                    resolve();
+                } finally {
+                    resolving.set(false);
+                }
+            });
+        }
+        return remoteAddress;
+    }
+
+    /**
+     * Look up the SRV record (if enabled) and the address of the host it points to.
+     */
+    private void resolve() {
+        String resolvedHost = configuredHost;
+        int resolvedPort = configuredPort;
+        long ttl = DEFAULT_TTL_SECONDS;
+
+        if (performSrvLookup) {
+            SRVRecord srvRecord = performSrvLookup();
+            if (srvRecord != null) {
+                resolvedHost = srvRecord.getTarget().toString(true);
+                resolvedPort = srvRecord.getPort();
+                ttl = Math.max(srvRecord.getTTL(), 1);
+            }
+        }
+
+        this.remoteAddress = new InetSocketAddress(resolvedHost, resolvedPort);
+        this.host = resolvedHost;
+        this.portRemote = resolvedPort;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        this.resolvedAt = System.nanoTime();
     }
 
     public String getConnectionHint() {
@@ -66,22 +125,24 @@ public class ConnectionDetails {
 
 
     /**
-     * Checks for DNS service records of the form _minecraft._tcp.example.com. If they exist, we will replace the
-     * current host and port with the ones found there.
+     * Checks for DNS service records of the form _minecraft._tcp.example.com. If they exist, we will use the host and
+     * port found there instead of the configured ones.
+     * @return the record, or null if there is none
      */
-    private void performSrvLookup() {
-        attempt(() -> {
-            Record[] records = new Lookup("_minecraft._tcp." + host, Type.SRV).run();
+    private SRVRecord performSrvLookup() {
+        try {
+            Record[] records = new Lookup("_minecraft._tcp." + configuredHost, Type.SRV).run();
 
             // no records were found
             if (records == null || records.length == 0) {
-                return;
+                return null;
             }
 
             // if there's multiple records, we'll just take the first one
-            SRVRecord srvRecord = (SRVRecord) records[0];
-            portRemote = srvRecord.getPort();
-            host = srvRecord.getTarget().toString(true);
-        });
+            return (SRVRecord) records[0];
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
     }
 }
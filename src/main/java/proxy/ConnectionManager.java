@@ -1,56 +1,94 @@
 package proxy;
 
 import config.Config;
+import config.Session;
 import game.NetworkMode;
-import game.data.WorldManager;
 import game.protocol.ConfigurationProtocol;
 import game.protocol.HandshakeProtocol;
 import game.protocol.LoginProtocol;
+import game.protocol.Protocol;
 import game.protocol.StatusProtocol;
 import packets.DataReader;
 import packets.handler.*;
+import proxy.replay.ReplayEncryptionManager;
+import proxy.replay.SessionRecorder;
+import proxy.replay.SessionReplayer;
+
+import java.nio.file.Path;
+
+import static util.ExceptionHandling.attempt;
 
 /**
  * Class to manage the connection status.
  */
 public class ConnectionManager {
+    private final Session session;
     private DataReader serverBoundDataReader;
     private DataReader clientBoundDataReader;
     private EncryptionManager encryptionManager;
     private CompressionManager compressionManager;
+    private SessionRecorder recorder;
+    private StatusCache statusCache;
+    private ProxySession proxySession;
+
+    private int protocolVersion;
+    private String localStatus;
 
     private NetworkMode mode = NetworkMode.STATUS;
+    private Protocol protocol = new HandshakeProtocol();
+
+    /**
+     * @param session the session this connection belongs to, which the packets are handled for
+     */
+    public ConnectionManager(Session session) {
+        this.session = session;
+    }
+
+    public Session getSession() {
+        return session;
+    }
 
     public NetworkMode getMode() {
         return mode;
     }
 
+    /**
+     * The protocol of the current mode, used to map packet IDs to packet names.
+     */
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
     public void setMode(NetworkMode mode) {
         this.mode = mode;
+        encryptionManager.getPacketInjector().setInGame(mode == NetworkMode.GAME);
+        if (recorder != null) {
+            recorder.recordMode(mode);
+        }
 
         switch (mode) {
             case STATUS:
-                PacketHandler.setProtocol(new StatusProtocol());
+                this.protocol = new StatusProtocol();
                 serverBoundDataReader.setPacketHandler(new ServerBoundStatusPacketHandler(this));
                 clientBoundDataReader.setPacketHandler(new ClientBoundStatusPacketHandler(this));
                 break;
             case LOGIN:
-                PacketHandler.setProtocol(new LoginProtocol());
+                this.protocol = new LoginProtocol();
                 serverBoundDataReader.setPacketHandler(new ServerBoundLoginPacketHandler(this));
                 clientBoundDataReader.setPacketHandler(new ClientBoundLoginPacketHandler(this));
                 break;
             case GAME:
-                PacketHandler.setProtocol(Config.getGameProtocol());
+                this.protocol = Config.getGameProtocol(session);
                 serverBoundDataReader.setPacketHandler(new ServerBoundGamePacketHandler(this));
                 clientBoundDataReader.setPacketHandler(ClientBoundGamePacketHandler.of(this));
                 break;
             case HANDSHAKE:
-                PacketHandler.setProtocol(new HandshakeProtocol());
+                this.protocol = new HandshakeProtocol();
                 serverBoundDataReader.setPacketHandler(new ServerBoundHandshakePacketHandler(this));
                 clientBoundDataReader.setPacketHandler(new ClientBoundHandshakePacketHandler(this));
                 break;
             case CONFIGURATION:
-                PacketHandler.setProtocol(new ConfigurationProtocol());
+                this.protocol = new ConfigurationProtocol();
                 serverBoundDataReader.setPacketHandler(new ServerBoundConfigurationPacketHandler(this));
                 clientBoundDataReader.setPacketHandler(ClientBoundConfigurationPacketHandler.of(this));
                 break;
@@ -62,28 +100,111 @@ public class ConnectionManager {
      */
     public void startProxy() {
         compressionManager = new CompressionManager();
-        encryptionManager = new EncryptionManager(compressionManager);
-        serverBoundDataReader = DataReader.serverBound(encryptionManager);
-        clientBoundDataReader = DataReader.clientBound(encryptionManager);
+        encryptionManager = new EncryptionManager(session, compressionManager);
+        serverBoundDataReader = DataReader.serverBound(encryptionManager, session);
+        clientBoundDataReader = DataReader.clientBound(encryptionManager, session);
+
+        Path recordingPath = Config.getRecordingPath(session);
+        if (recordingPath != null) {
+            attempt(() -> {
+                recorder = new SessionRecorder(recordingPath);
+                serverBoundDataReader.setRecorder(recorder.stream(false));
+                clientBoundDataReader.setRecorder(recorder.stream(true));
+            });
+        }
 
         setMode(NetworkMode.HANDSHAKE);
 
-        ProxyServer proxy = new ProxyServer(this, Config.getConnectionDetails());
+        statusCache = new StatusCache(session.getConnectionDetails(), Config.getStatusCacheTtl());
+
+        ProxyServer proxy = new ProxyServer(this, session.getConnectionDetails());
         proxy.runServer(serverBoundDataReader, clientBoundDataReader);
 
-        Config.registerPacketInjector(this.getEncryptionManager().getPacketInjector());
+        session.setPacketInjector(this.getEncryptionManager().getPacketInjector());
+    }
+
+    /**
+     * Replays a recorded session instead of starting the proxy. Nothing is sent anywhere, but the data is handled
+     * the same way as if it came from a real connection.
+     * @param recording the recording to replay
+     * @param realTime  whether to replay with the original timing, otherwise the data is replayed as fast as possible
+     */
+    public void startReplay(Path recording, boolean realTime) {
+        compressionManager = new CompressionManager();
+        encryptionManager = new ReplayEncryptionManager(session, compressionManager);
+        serverBoundDataReader = DataReader.serverBound(encryptionManager, session);
+        clientBoundDataReader = DataReader.clientBound(encryptionManager, session);
+
+        setMode(NetworkMode.HANDSHAKE);
+
+        session.setPacketInjector(this.getEncryptionManager().getPacketInjector());
+
+        new SessionReplayer(recording, realTime, this, serverBoundDataReader, clientBoundDataReader).start();
+    }
+
+    /**
+     * Set the protocol version once the client has told us which version it's using.
+     */
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        Config.setProtocolVersion(session, protocolVersion);
+        if (recorder != null) {
+            recorder.recordProtocolVersion(protocolVersion);
+        }
+    }
+
+    void setProxySession(ProxySession proxySession) {
+        this.proxySession = proxySession;
+    }
+
+    /**
+     * Connect to the server. The proxy only connects once the client has said what it wants, so that server list
+     * pings can be answered without a connection to the server.
+     */
+    public void connectToServer() {
+        if (proxySession != null) {
+            proxySession.requestConnect();
+        }
+    }
+
+    /**
+     * Check if we have a status response for the client, in which case we will answer its status request ourselves.
+     * @return true if the status request will be answered locally
+     */
+    public boolean answerStatusLocally(int protocolVersion) {
+        localStatus = statusCache == null ? null : statusCache.get(protocolVersion);
+        return localStatus != null;
+    }
+
+    /**
+     * The status response to send to the client, or null if the status request should be forwarded to the server.
+     */
+    public String getLocalStatus() {
+        return localStatus;
+    }
+
+    public void onStatusResponse(String response) {
+        if (statusCache != null) {
+            statusCache.update(protocolVersion, response);
+        }
     }
 
     /**
      * Reset the connection when its lost.
      */
     public void reset() {
+        proxySession = null;
+        localStatus = null;
+
+        if (recorder != null) {
+            recorder.recordReset();
+        }
         encryptionManager.reset();
         compressionManager.reset();
         serverBoundDataReader.reset();
         clientBoundDataReader.reset();
         setMode(NetworkMode.HANDSHAKE);
-        WorldManager.getInstance().resetConnection();
+        session.getWorldManager().resetConnection();
     }
 
     public EncryptionManager getEncryptionManager() {
@@ -3,9 +3,9 @@ package proxy;
 import static util.PrintUtils.devPrintFormat;
 
 import config.Config;
+import config.Session;
 import config.Version;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
@@ -21,32 +21,28 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Consumer;
-import java.util.function.UnaryOperator;
 import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import packets.builder.PacketBuilder;
-import packets.lib.ByteQueue;
 import proxy.auth.ClientAuthenticator;
 import proxy.auth.ServerAuthenticator;
+import proxy.encryption.CipherEngine;
+import proxy.encryption.StreamCipher;
 
 /**
  * Class to handle encryption, decryption and related masking of the proxy server.
  */
 public class EncryptionManager {
-    private static final String ENCRYPTION_TYPE = "AES/CFB8/NoPadding";
+    private final Session session;
     private final PacketInjector packetInjector;
     private boolean encryptionEnabled = false;
     private String serverId;
     private RSAPublicKey serverRealPublicKey;
     private byte[] nonce;
     private byte[] clientSharedSecret;
-    private Cipher clientBoundDecryptor, clientBoundEncryptor, serverBoundEncryptor, serverBoundDecryptor;
-    private OutputStream streamToClient;
-    private OutputStream streamToServer;
+    private StreamCipher clientBoundDecryptor, clientBoundEncryptor, serverBoundEncryptor, serverBoundDecryptor;
+    private ChannelOutputStream streamToClient;
+    private ChannelOutputStream streamToServer;
     private KeyPair serverKeyPair;
     private KeyPair clientProfileKeyPair;
     private String username;
@@ -66,9 +62,10 @@ public class EncryptionManager {
         });
     }
 
-    public EncryptionManager(CompressionManager compressionManager) {
+    public EncryptionManager(Session session, CompressionManager compressionManager) {
+        this.session = session;
         this.compressionManager = compressionManager;
-        this.packetInjector = new PacketInjector(compressionManager);
+        this.packetInjector = new PacketInjector(session, this, compressionManager);
         this.clientAuthenticator = new ClientAuthenticator();
     }
 
@@ -142,7 +139,7 @@ public class EncryptionManager {
         builder.writeVarInt(nonce.length); // verify token len
         builder.writeByteArray(nonce);  // verify token
 
-        if (Config.versionReporter().isAtLeast(Version.V1_20_6)) {
+        if (session.getVersionReporter().isAtLeast(Version.V1_20_6)) {
             builder.writeBoolean(shouldAuthenticate);
         }
 
@@ -150,53 +147,35 @@ public class EncryptionManager {
     }
 
     /**
-     * Method to stream a given queue of bytes to the client. Whenever this is called it also checks whether we have
-     * any injected packets queued to be sent to the client.
+     * Method to stream a given array of bytes to the client.
      * @param bytes the bytes to stream
      */
-    public void streamToClient(ByteQueue bytes) throws IOException {
-        streamTo(streamToClient, bytes, this::clientBoundEncrypt);
-
-        // if we need to insert packets, send at most 100 at a time
-        int limit = 100;
-        while (packetInjector.hasNext() && limit > 0) {
-            limit--;
-            streamTo(streamToClient, packetInjector.getNext(), this::clientBoundEncrypt);
-        }
-
+    public void streamToClient(byte[] bytes) throws IOException {
+        streamToClient(bytes, 0, bytes.length);
     }
 
     /**
-     * Method to stream a queue of bytes to a given output stream. The stream will be encrypted if encryption has been
-     * enabled.
-     * @param stream  the stream to write to
-     * @param bytes   the bytes to write
-     * @param encrypt the encryption operator
+     * Method to stream a range of bytes to the client. Injected packets are sent separately by the packet injector.
+     * The bytes are buffered by the stream, which encrypts them if needed and sends them when it is flushed. The given
+     * bytes are not modified.
      */
-    private void streamTo(OutputStream stream, ByteQueue bytes, UnaryOperator<byte[]> encrypt) throws IOException {
-        byte[] b = bytes.toArray();
-
-        byte[] encrypted = encrypt.apply(b);
-
-        stream.write(encrypted, 0, encrypted.length);
-        stream.flush();
+    public void streamToClient(byte[] bytes, int offset, int length) throws IOException {
+        streamToClient.write(bytes, offset, length);
     }
 
     /**
-     * Encrypts a given byte array using the encryption stream for the client-side.
+     * Send all bytes written to the client so far.
      */
-    private byte[] clientBoundEncrypt(byte[] bytes) {
-        return encrypt(bytes, clientBoundEncryptor);
+    public void flushToClient() throws IOException {
+        streamToClient.flush();
     }
 
     /**
-     * Encrypts a given byte array using the the given encryptor, if encryption has been enabled.
+     * Encrypts a range of the given byte array in place using the given encryptor.
      */
-    private byte[] encrypt(byte[] bytes, Cipher encryptor) {
-        if (!encryptionEnabled) { return bytes; }
-
+    private static void encrypt(byte[] bytes, int offset, int length, StreamCipher encryptor) {
         try {
-            return encryptor.update(bytes);
+            encryptor.update(bytes, offset, length, bytes, offset);
         } catch (Exception ex) {
             throw new RuntimeException("Could not encrypt stream!", ex);
         }
@@ -350,66 +329,63 @@ public class EncryptionManager {
         return new BigInteger(sha1.get().digest()).toString(16);
     }
 
-    public void streamToServer(ByteQueue bytes) throws IOException {
-        // System.out.println("Writing bytes to server: " + bytes.size() + " :: " + bytes);
-        streamTo(streamToServer, bytes, this::serverBoundEncrypt);
+    public void streamToServer(byte[] bytes) throws IOException {
+        streamToServer(bytes, 0, bytes.length);
+    }
+
+    public void streamToServer(byte[] bytes, int offset, int length) throws IOException {
+        streamToServer.write(bytes, offset, length);
     }
 
     /**
      * Enable encryption for all future packets. We need to create four cyphers: a decryptor and encryptor for the
      * client-bound packets, and a decryptor and encryptor for the server-bound packets. As the cypher is continuous
      * and not per-packet we cannot re-use the streams between the client and server despite them having the same key.
+     * The implementation used for the cyphers can be chosen using the --cipher-engine option.
      */
     private void enableEncryption() {
         attempt(() -> {
-            IvParameterSpec ivspec = new IvParameterSpec(clientSharedSecret);
-            SecretKeySpec k = new SecretKeySpec(clientSharedSecret, "AES");
-            clientBoundEncryptor = Cipher.getInstance(ENCRYPTION_TYPE);
-            clientBoundEncryptor.init(Cipher.ENCRYPT_MODE, k, ivspec);
-
-            clientBoundDecryptor = Cipher.getInstance(ENCRYPTION_TYPE);
-            clientBoundDecryptor.init(Cipher.DECRYPT_MODE, k, ivspec);
+            CipherEngine engine = Config.getCipherEngine();
 
-            serverBoundEncryptor = Cipher.getInstance(ENCRYPTION_TYPE);
-            serverBoundEncryptor.init(Cipher.ENCRYPT_MODE, k, ivspec);
+            clientBoundEncryptor = engine.create(Cipher.ENCRYPT_MODE, clientSharedSecret);
+            clientBoundDecryptor = engine.create(Cipher.DECRYPT_MODE, clientSharedSecret);
+            serverBoundEncryptor = engine.create(Cipher.ENCRYPT_MODE, clientSharedSecret);
+            serverBoundDecryptor = engine.create(Cipher.DECRYPT_MODE, clientSharedSecret);
 
-            serverBoundDecryptor = Cipher.getInstance(ENCRYPTION_TYPE);
-            serverBoundDecryptor.init(Cipher.DECRYPT_MODE, k, ivspec);
+            // everything written to the streams from now on is encrypted
+            streamToClient.setEncoder((arr, offset, length) -> encrypt(arr, offset, length, clientBoundEncryptor));
+            streamToServer.setEncoder((arr, offset, length) -> encrypt(arr, offset, length, serverBoundEncryptor));
 
             encryptionEnabled = true;
         });
     }
 
-    private byte[] serverBoundEncrypt(byte[] bytes) {
-        return encrypt(bytes, serverBoundEncryptor);
-    }
-
-    public void setStreamToClient(OutputStream streamToClient) {
+    public void setStreamToClient(ChannelOutputStream streamToClient) {
         this.streamToClient = streamToClient;
     }
 
-    public void setStreamToServer(OutputStream streamToServer) {
+    public void setStreamToServer(ChannelOutputStream streamToServer) {
         this.streamToServer = streamToServer;
     }
 
-    public byte[] serverBoundDecrypt(byte[] bytes) {
-        return decrypt(bytes, serverBoundDecryptor);
+    public void serverBoundDecrypt(byte[] bytes, int offset, int length) {
+        decrypt(bytes, offset, length, serverBoundDecryptor);
     }
 
-    private byte[] decrypt(byte[] bytes, Cipher decryptor) {
-        if (!encryptionEnabled) { return bytes; }
-
+    /**
+     * Decrypts a range of the given array in place.
+     */
+    private void decrypt(byte[] bytes, int offset, int length, StreamCipher decryptor) {
         try {
-            return decryptor.update(bytes);
+            decryptor.update(bytes, offset, length, bytes, offset);
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         }
-        return null;
     }
 
-    public byte[] clientBoundDecrypt(byte[] bytes) {
-        return decrypt(bytes, clientBoundDecryptor);
+    public void clientBoundDecrypt(byte[] bytes, int offset, int length) {
+        decrypt(bytes, offset, length, clientBoundDecryptor);
     }
 
     public void reset() {
@@ -428,7 +404,7 @@ public class EncryptionManager {
      */
     public void sendMaskedHandshake(int protocolVersion, int nextMode, String hostExtension) {
         attempt(() -> {
-            ConnectionDetails connectionDetails = Config.getConnectionDetails();
+            ConnectionDetails connectionDetails = session.getConnectionDetails();
             PacketBuilder builder = new PacketBuilder(0);
 
             builder.writeVarInt(protocolVersion);
@@ -451,7 +427,10 @@ public class EncryptionManager {
     }
 
     public void sendImmediately(PacketBuilder builder) {
-        attempt(() -> streamToClient(builder.build(compressionManager)));
+        attempt(() -> {
+            streamToClient(builder.build(compressionManager));
+            flushToClient();
+        });
     }
 
     public void setClientProfilePublicKey(byte[] arr) {
@@ -1,40 +1,253 @@
 package proxy;
 
+import static util.ExceptionHandling.attempt;
+
+import config.Config;
+import config.Session;
+import config.Version;
+import java.util.ArrayDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import packets.builder.PacketBuilder;
-import packets.lib.ByteQueue;
 
+/**
+ * Queue of packets to send to the client that did not come from the server, like chunks loaded from disk to extend
+ * the render distance. Packets are sent on a timer, paced so that the client does not stutter from receiving too many
+ * chunks at once.
+ * <p>
+ * From 1.20.2, clients report how many chunks they can handle per tick in response to each batch of chunks. We send
+ * our chunks in batches of our own, and wait for the client to acknowledge a batch before sending the next one. These
+ * acknowledgements are not forwarded, as the server does not know about our batches. Older clients do not report
+ * anything, so for them we limit the number of bytes sent per second instead.
+ */
 public class PacketInjector {
-    private final ConcurrentLinkedQueue<ByteQueue> insertedPackets;
+    private static final long TICK_MILLIS = 50;
+
+    // the vanilla server assumes this rate until the client has acknowledged a batch
+    private static final float INITIAL_CHUNKS_PER_TICK = 9;
+    private static final float MAX_CHUNKS_PER_TICK = 64;
+
+    // one timer for all injectors, as a daemon so that it does not keep the application running
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "Packet Injector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Session session;
+    private final ConcurrentLinkedQueue<InjectedPacket> insertedPackets;
+    private final EncryptionManager encryptionManager;
     private final CompressionManager compressionManager;
+    private volatile boolean inGame;
+
+    // chunk batches (1.20.2+), for each batch sent to the client we keep track of whether it was one of ours
+    private final ArrayDeque<Boolean> unacknowledgedBatches;
+    private boolean serverBatchOpen;
+    private boolean awaitingAcknowledgement;
+    private float chunksPerTick;
+    private float batchQuota;
+
+    // byte rate limit (before 1.20.2)
+    private long tokens;
+    private long lastRefill;
+
+    public PacketInjector(Session session, EncryptionManager encryptionManager, CompressionManager compressionManager) {
+        this(session, encryptionManager, compressionManager, TIMER);
+    }
 
-    public PacketInjector(CompressionManager compressionManager) {
+    /**
+     * @param timer the timer to flush on, or null to only flush when {@link #flush} is called directly
+     */
+    PacketInjector(Session session, EncryptionManager encryptionManager, CompressionManager compressionManager,
+                   ScheduledExecutorService timer) {
+        this.session = session;
         this.insertedPackets = new ConcurrentLinkedQueue<>();
+        this.encryptionManager = encryptionManager;
         this.compressionManager = compressionManager;
+        this.unacknowledgedBatches = new ArrayDeque<>();
+
+        resetPacing();
+
+        // the timer is shared between sessions, so each flush is bound to the session of this injector
+        if (timer != null) {
+            timer.scheduleAtFixedRate(() -> session.run(this::flush), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * Adds a packet to the queue. This queue is checked whenever a packet is sent, and they will be sent to the
-     * client after.
+     * Adds a packet to the queue. Packets are sent to the client in the order they were added.
      */
     public void enqueuePacket(PacketBuilder packet) {
-        insertedPackets.add(packet.build(compressionManager));
+        insertedPackets.add(new InjectedPacket(packet.build(compressionManager), false));
+    }
+
+    /**
+     * Adds a chunk packet to the queue. Chunks are paced based on how fast the client can handle them.
+     */
+    public void enqueueChunk(PacketBuilder packet) {
+        insertedPackets.add(new InjectedPacket(packet.build(compressionManager), true));
     }
 
-    public void clear() {
+    public synchronized void clear() {
         this.insertedPackets.clear();
+        resetPacing();
     }
 
-    public boolean hasNext() {
-        return !insertedPackets.isEmpty();
+    /**
+     * Called when the connection changes mode. Packets are only sent while in game. Anything still queued when the
+     * connection leaves the game is dropped, as the client will no longer have the world those packets belong to.
+     */
+    public synchronized void setInGame(boolean inGame) {
+        if (this.inGame && !inGame) {
+            clear();
+        }
+        this.inGame = inGame;
     }
 
-    public ByteQueue getNext() {
-        return insertedPackets.remove();
+    private void resetPacing() {
+        unacknowledgedBatches.clear();
+        serverBatchOpen = false;
+        awaitingAcknowledgement = false;
+        chunksPerTick = INITIAL_CHUNKS_PER_TICK;
+        batchQuota = 0;
+
+        tokens = 0;
+        lastRefill = System.nanoTime();
     }
 
     public int size() {
         return insertedPackets.size();
     }
+
+    /**
+     * Called by the timer every tick to send whatever the client is ready for.
+     */
+    synchronized void flush() {
+        try {
+            if (!inGame || insertedPackets.isEmpty()) {
+                return;
+            }
+
+            if (session.getVersionReporter().isAtLeast(Version.V1_20_2)) {
+                flushBatch();
+            } else {
+                flushLimited();
+            }
+            encryptionManager.flushToClient();
+        } catch (Exception ex) {
+            // exceptions would cancel the timer
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Send the chunks the client has room for as a single batch. The quota grows by the rate the client asked for
+     * every tick, similar to the vanilla server. Other packets are sent as they come up in the queue.
+     */
+    private void flushBatch() {
+        batchQuota = Math.min(batchQuota + chunksPerTick, MAX_CHUNKS_PER_TICK);
+
+        // batches cannot overlap, so we wait for the server's batch to finish and for the client to accept ours
+        if (serverBatchOpen || awaitingAcknowledgement) {
+            return;
+        }
+
+        int batchSize = 0;
+        InjectedPacket next;
+        while ((next = insertedPackets.peek()) != null) {
+            if (next.chunk) {
+                if (batchSize + 1 > batchQuota) {
+                    break;
+                }
+                if (batchSize == 0) {
+                    send(new PacketBuilder("ChunkBatchStart"));
+                }
+                batchSize++;
+            }
+            send(insertedPackets.remove().data);
+        }
+
+        if (batchSize > 0) {
+            PacketBuilder finished = new PacketBuilder("ChunkBatchFinished");
+            finished.writeVarInt(batchSize);
+            send(finished);
+
+            unacknowledgedBatches.add(true);
+            awaitingAcknowledgement = true;
+            batchQuota -= batchSize;
+        }
+    }
+
+    /**
+     * Send packets while the byte budget allows. The budget grows at the configured rate, and may go negative to
+     * allow packets larger than a tick's worth of data.
+     */
+    private void flushLimited() {
+        long bytesPerSecond = Config.getInjectionRate() * 1024L;
+
+        long now = System.nanoTime();
+        long elapsed = Math.min(now - lastRefill, TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+
+        long burst = bytesPerSecond * TICK_MILLIS / 1000;
+        tokens = Math.min(tokens + elapsed * bytesPerSecond / TimeUnit.SECONDS.toNanos(1), burst);
+
+        InjectedPacket next;
+        while (tokens > 0 && (next = insertedPackets.poll()) != null) {
+            send(next.data);
+            tokens -= next.data.length;
+        }
+    }
+
+    /**
+     * The server started a batch of chunks. We cannot start a batch of our own until it's finished.
+     */
+    public synchronized void onServerBatchStart() {
+        serverBatchOpen = true;
+    }
+
+    /**
+     * The server finished a batch of chunks. Instead of forwarding the original packet, we send it here so that the
+     * order of batches is known when the client acknowledges them.
+     * @param batchSize the number of chunks in the batch
+     */
+    public synchronized void onServerBatchFinished(int batchSize) {
+        PacketBuilder finished = new PacketBuilder("ChunkBatchFinished");
+        finished.writeVarInt(batchSize);
+        send(finished);
+
+        unacknowledgedBatches.add(false);
+        serverBatchOpen = false;
+    }
+
+    /**
+     * The client acknowledged a batch, which may either be from the server or one of ours.
+     * @param desiredChunksPerTick the number of chunks per tick the client can handle
+     * @return true if the acknowledgement should be forwarded to the server
+     */
+    public synchronized boolean onBatchReceived(float desiredChunksPerTick) {
+        if (!Float.isNaN(desiredChunksPerTick)) {
+            chunksPerTick = Math.max(0.01f, Math.min(desiredChunksPerTick, MAX_CHUNKS_PER_TICK));
+        }
+
+        Boolean injected = unacknowledgedBatches.poll();
+        if (injected == null || !injected) {
+            return true;
+        }
+
+        awaitingAcknowledgement = false;
+        return false;
+    }
+
+    private void send(PacketBuilder packet) {
+        send(packet.build(compressionManager));
+    }
+
+    private void send(byte[] data) {
+        attempt(() -> encryptionManager.streamToClient(data, 0, data.length));
+    }
+
+    private record InjectedPacket(byte[] data, boolean chunk) { }
 }
@@ -1,29 +1,49 @@
 package proxy;
 
-import game.NetworkMode;
+import config.Config;
 import packets.DataReader;
 
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static util.ExceptionHandling.attempt;
 
 /**
- * Proxy server class, handles receiving of data and forwarding it to the right places.
+ * Proxy server class, handles receiving of data and forwarding it to the right places. Both directions of the
+ * connection are handled on a single thread using non-blocking channels.
  */
 public class ProxyServer extends Thread {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // how long the selector waits at most, so that the spare upstream connection is replaced in time
+    private static final int SELECT_TIMEOUT_MILLIS = 1000;
+
     private final ConnectionDetails connectionDetails;
     private final ConnectionManager connectionManager;
+    private final BufferPool bufferPool;
+
+    // work handed to the selector thread by other threads
+    private final Queue<Runnable> tasks;
 
     private DataReader onServerBoundPacket;
     private DataReader onClientBoundPacket;
 
+    private Selector selector;
+    private SelectionKey acceptKey;
+    private ProxySession session;
+    private UpstreamConnector upstreamConnector;
+
     public ProxyServer(ConnectionManager connectionManager, ConnectionDetails connectionDetails) {
         this.connectionDetails = connectionDetails;
         this.connectionManager = connectionManager;
+        this.bufferPool = new BufferPool(BUFFER_SIZE);
+        this.tasks = new ConcurrentLinkedQueue<>();
     }
 
     /**
@@ -41,85 +61,134 @@ public class ProxyServer extends Thread {
     @Override
     public void run() {
         setName("Proxy");
-        
+
         String friendlyHost = connectionDetails.getFriendlyHost();
         System.out.println("Starting proxy for " + friendlyHost + ". Make sure to connect to localhost:" + connectionDetails.getPortLocal() + " instead of the regular server address.");
 
-        // Create a ServerSocket to listen for connections with
-        AtomicReference<ServerSocket> ss = new AtomicReference<>();
-        attempt(() -> ss.set(connectionDetails.getServerSocket()), (ex) -> {
+        // Create a channel to listen for connections with
+        attempt(() -> {
+            selector = Selector.open();
+
+            ServerSocketChannel serverChannel = connectionDetails.getServerSocketChannel();
+            serverChannel.configureBlocking(false);
+            acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            if (Config.prewarmUpstream()) {
+                upstreamConnector = new UpstreamConnector(selector, connectionDetails);
+            }
+        }, (ex) -> {
             ex.printStackTrace();
             System.exit(1);
         });
 
-        final byte[] request = new byte[4096];
-        final byte[] reply = new byte[4096];
-
         while (true) {
-            AtomicReference<Socket> client = new AtomicReference<>();
-            AtomicReference<Socket> server = new AtomicReference<>();
-
-            attempt(() -> {
-                // Wait for a connection on the local port
-                client.set(ss.get().accept());
-
-                final InputStream streamFromClient = client.get().getInputStream();
-                final OutputStream streamToClient = client.get().getOutputStream();
-                connectionManager.getEncryptionManager().setStreamToClient(streamToClient);
-
-                // If the server cannot connect, close client connection
-                attempt(() -> server.set(connectionDetails.getClientSocket()), (ex) -> {
-                    System.err.println("Cannot connect to " + friendlyHost + ". The server may be down or on a different address. (" + ex.getClass().getCanonicalName() + ")");
-                    attempt(client.get()::close);
-                });
-
-                final InputStream streamFromServer = server.get().getInputStream();
-                final OutputStream streamToServer = server.get().getOutputStream();
-                connectionManager.getEncryptionManager().setStreamToServer(streamToServer);
-
-                // start client listener thread
-                Thread clientListener = new Thread(() -> {
-                    connectionManager.setMode(NetworkMode.HANDSHAKE);
-                    attempt(() -> {
-                        int bytesRead;
-                        while ((bytesRead = streamFromClient.read(request)) != -1) {
-                            onServerBoundPacket.pushData(request, bytesRead);
-                        }
-                    }, (ex) -> {
-                        Throwable cause = ex.getCause();
-                        if (cause != null) {
-                            cause.printStackTrace();
-                        }
-                        System.out.println("Server probably disconnected. Waiting for new connection...");
-                        connectionManager.reset();
-                    });
-                    // the client closed the connection to us, so close our connection to the server.
-                    attempt(streamToServer::close);
-                }, "Proxy Client Listener");
-                clientListener.start();
-                clientListener.setPriority(10);
-
-                // listen to messages from server
-                attempt(() -> {
-                    int bytesRead;
-                    while ((bytesRead = streamFromServer.read(reply)) != -1) {
-                        onClientBoundPacket.pushData(reply, bytesRead);
-                    }
-                }, (ex) -> {
-                    Throwable cause = ex.getCause();
-                    if (cause != null) {
-                        cause.printStackTrace();
-                    }
-                    System.out.println("Client probably disconnected. Waiting for new connection...");
-                    connectionManager.reset();
-                });
-
-                // The server closed its connection to us, so we close our connection to our client.
-                streamToClient.close();
-            }, (ex) -> {
-                if (server.get() != null) { attempt(server.get()::close); }
-                if (client.get() != null) { attempt(client.get()::close); }
-            });
+            attempt(this::select);
+        }
+    }
+
+    /**
+     * Wait for network events and pass them on to the session they belong to.
+     */
+    private void select() throws IOException {
+        selector.select(SELECT_TIMEOUT_MILLIS);
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key == acceptKey) {
+                accept();
+            } else if (key.attachment() instanceof UpstreamConnector connector) {
+                connector.handle(key);
+            } else {
+                ((ProxySession) key.attachment()).handle(key);
+            }
         }
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+
+        if (session != null && session.isClosed()) {
+            endSession();
+        }
+
+        if (upstreamConnector != null) {
+            upstreamConnector.maintain();
+        }
+    }
+
+    /**
+     * Accept a new client connection. While a session is active we stop accepting new connections, they will wait
+     * in the backlog until the current session ends.
+     */
+    private void accept() throws IOException {
+        SocketChannel client = ((ServerSocketChannel) acceptKey.channel()).accept();
+        if (client == null) {
+            return;
+        }
+
+        acceptKey.interestOps(0);
+        session = new ProxySession(this, client, onServerBoundPacket, onClientBoundPacket);
+
+        try {
+            session.start();
+        } catch (IOException ex) {
+            System.err.println("Could not accept client connection. (" + ex.getClass().getCanonicalName() + ")");
+            session.close();
+        }
+    }
+
+    /**
+     * Clean up after a session was closed, and start accepting new connections again.
+     */
+    private void endSession() {
+        session = null;
+        connectionManager.reset();
+
+        if (upstreamConnector != null) {
+            upstreamConnector.resume();
+        }
+
+        if (acceptKey.isValid()) {
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Run the given task on the selector thread, after the network events it is currently handling.
+     */
+    void runOnSelector(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    ConnectionDetails getConnectionDetails() {
+        return connectionDetails;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * The spare connection to the server, or null if we don't keep one.
+     */
+    UpstreamConnector getUpstreamConnector() {
+        return upstreamConnector;
     }
 }
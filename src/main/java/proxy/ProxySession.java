@@ -0,0 +1,301 @@
+package proxy;
+
+import game.NetworkMode;
+import packets.DataReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+
+import static util.ExceptionHandling.attempt;
+
+/**
+ * A single proxied connection, consisting of the channel to the local client and the channel to the remote server.
+ * All events are handled on the proxy's selector thread, so no threads are created per connection.
+ */
+public class ProxySession {
+    /**
+     * When this many bytes are waiting to be written to one side, we stop reading from the other side until they have
+     * been written. This mirrors the back-pressure the blocking sockets used to give us.
+     */
+    private static final int MAX_PENDING_BYTES = 1 << 21;
+
+    private final ProxyServer proxy;
+    private final ConnectionManager connectionManager;
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final ConnectionDetails connectionDetails;
+    private final UpstreamConnector upstreamConnector;
+
+    private final DataReader onServerBoundPacket;
+    private final DataReader onClientBoundPacket;
+
+    private final SocketChannel client;
+    private SocketChannel server;
+    private volatile boolean connectRequested;
+    private SelectionKey clientKey;
+    private SelectionKey serverKey;
+    private ChannelOutputStream streamToClient;
+    private ChannelOutputStream streamToServer;
+
+    private volatile boolean closed;
+
+    ProxySession(ProxyServer proxy, SocketChannel client, DataReader onServerBoundPacket, DataReader onClientBoundPacket) {
+        this.proxy = proxy;
+        this.connectionManager = proxy.getConnectionManager();
+        this.selector = proxy.getSelector();
+        this.bufferPool = proxy.getBufferPool();
+        this.connectionDetails = proxy.getConnectionDetails();
+        this.upstreamConnector = proxy.getUpstreamConnector();
+        this.client = client;
+        this.onServerBoundPacket = onServerBoundPacket;
+        this.onClientBoundPacket = onClientBoundPacket;
+    }
+
+    /**
+     * Start reading from the client. The connection to the remote server is only made once the handshake asks for
+     * it, so that status requests we can answer ourselves do not need one. Anything written to the server before then
+     * is kept until the connection is established.
+     */
+    void start() throws IOException {
+        client.configureBlocking(false);
+        client.socket().setTcpNoDelay(true);
+        clientKey = client.register(selector, 0, this);
+        streamToClient = new ChannelOutputStream(client, this);
+        connectionManager.getEncryptionManager().setStreamToClient(streamToClient);
+
+        streamToServer = new ChannelOutputStream(this);
+        connectionManager.getEncryptionManager().setStreamToServer(streamToServer);
+
+        connectionManager.setProxySession(this);
+        connectionManager.setMode(NetworkMode.HANDSHAKE);
+
+        // synchronous packets are parsed without holding up the selector thread, which continues reading after
+        onServerBoundPacket.setResumer(work -> proxy.runOnSelector(() -> resume(work, true)));
+        onClientBoundPacket.setResumer(work -> proxy.runOnSelector(() -> resume(work, false)));
+
+        clientKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Called by the packet handlers when the server is needed. Handlers run on the parser thread, so the connection
+     * is started by the selector thread once it has finished handling the current data.
+     */
+    void requestConnect() {
+        connectRequested = true;
+    }
+
+    /**
+     * Connect to the server, using the spare connection if there is one ready.
+     */
+    private void connect() throws IOException {
+        connectRequested = false;
+
+        SelectionKey spare = upstreamConnector == null ? null : upstreamConnector.take();
+        if (spare != null) {
+            server = (SocketChannel) spare.channel();
+            serverKey = spare;
+            serverKey.attach(this);
+            streamToServer.setChannel(server);
+            onConnected();
+            return;
+        }
+
+        try {
+            server = SocketChannel.open();
+            server.configureBlocking(false);
+            server.socket().setTcpNoDelay(true);
+            streamToServer.setChannel(server);
+
+            serverKey = server.register(selector, SelectionKey.OP_CONNECT, this);
+            if (server.connect(connectionDetails.getRemoteAddress())) {
+                onConnected();
+            }
+        } catch (IOException | UnresolvedAddressException ex) {
+            connectFailed(ex);
+        }
+    }
+
+    /**
+     * Handle a selected key belonging to this session.
+     */
+    void handle(SelectionKey key) {
+        boolean isClient = key == clientKey;
+        try {
+            if (key.isConnectable()) {
+                finishConnect();
+                return;
+            }
+            if (key.isWritable()) {
+                write(key, isClient);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(key, isClient);
+            }
+        } catch (Exception ex) {
+            failed(ex, isClient);
+        }
+    }
+
+    /**
+     * Continue reading from the given side once the packet its reader was waiting for has been parsed.
+     * @param work what is left of the data that was read
+     */
+    private void resume(IExceptionHandler work, boolean isClient) {
+        if (closed) { return; }
+
+        try {
+            work.run();
+            afterRead(isClient ? clientKey : serverKey, isClient);
+        } catch (Exception ex) {
+            failed(ex, isClient);
+        }
+    }
+
+    private void failed(Exception ex, boolean isClient) {
+        if (closed) { return; }
+
+        Throwable cause = ex.getCause();
+        if (cause != null) {
+            cause.printStackTrace();
+        }
+        disconnected(isClient);
+    }
+
+    private void finishConnect() throws IOException {
+        try {
+            server.finishConnect();
+        } catch (IOException ex) {
+            connectFailed(ex);
+            return;
+        }
+        onConnected();
+    }
+
+    private void connectFailed(Exception ex) {
+        System.err.println("Cannot connect to " + connectionDetails.getFriendlyHost() + ". The server may be down or on a different address. (" + ex.getClass().getCanonicalName() + ")");
+        close();
+    }
+
+    /**
+     * Send whatever the client sent while we were connecting, and resume reading from the client in case it was
+     * paused because too much was waiting.
+     */
+    private void onConnected() throws IOException {
+        serverKey.interestOps(SelectionKey.OP_READ);
+        updateReadInterest(clientKey, true);
+        streamToServer.flush();
+    }
+
+    /**
+     * Read whatever is available from the given side and push it into the matching data reader.
+     */
+    private void read(SelectionKey key, boolean isClient) throws IOException {
+        SocketChannel channel = isClient ? client : server;
+        DataReader reader = isClient ? onServerBoundPacket : onClientBoundPacket;
+
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            int bytesRead = channel.read(buffer);
+            if (bytesRead == -1) {
+                disconnected(isClient);
+                return;
+            }
+
+            buffer.flip();
+            reader.pushData(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
+
+        afterRead(key, isClient);
+    }
+
+    /**
+     * Send out everything that was handled from the data read from the given side.
+     */
+    private void afterRead(SelectionKey key, boolean isClient) throws IOException {
+        if (connectRequested && serverKey == null) {
+            connect();
+            if (closed) { return; }
+        }
+
+        // everything handled from this read is sent in one go. Handlers may write to either side, so flush both.
+        streamToServer.flush();
+        streamToClient.flush();
+
+        updateReadInterest(key, isClient);
+    }
+
+    /**
+     * Stop reading from the given side while its reader is waiting for a packet to be parsed, or while the other side
+     * isn't keeping up. Otherwise make sure we are reading from it.
+     */
+    private void updateReadInterest(SelectionKey key, boolean isClient) {
+        if (key == null || !key.isValid()) { return; }
+
+        DataReader reader = isClient ? onServerBoundPacket : onClientBoundPacket;
+        ChannelOutputStream target = isClient ? streamToServer : streamToClient;
+        if (reader.isSuspended() || target.pendingBytes() > MAX_PENDING_BYTES) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Write pending data to the given side. Once everything is written, we resume reading from the other side in case
+     * it was paused.
+     */
+    private void write(SelectionKey key, boolean isClient) throws IOException {
+        ChannelOutputStream stream = isClient ? streamToClient : streamToServer;
+        if (!stream.flushPending()) {
+            return;
+        }
+
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        updateReadInterest(isClient ? serverKey : clientKey, !isClient);
+    }
+
+    /**
+     * Called by the output streams when the socket could not accept all data. Streams may be written to from other
+     * threads, so the selector needs to be woken up to pick up the new interest.
+     */
+    void onPendingWrite(SocketChannel channel) {
+        SelectionKey key = channel == client ? clientKey : serverKey;
+        if (key == null || !key.isValid()) { return; }
+
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        selector.wakeup();
+    }
+
+    private void disconnected(boolean isClient) {
+        if (isClient) {
+            System.out.println("Client disconnected. Waiting for new connection...");
+        } else {
+            System.out.println("Server disconnected. Waiting for new connection...");
+        }
+        close();
+    }
+
+    /**
+     * Close both sides of the connection. The proxy server will reset the connection state once it notices the
+     * session has been closed, so that this can safely be called while a packet is being handled.
+     */
+    void close() {
+        if (closed) { return; }
+        closed = true;
+
+        attempt(client::close);
+        if (server != null) { attempt(server::close); }
+
+        selector.wakeup();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+}
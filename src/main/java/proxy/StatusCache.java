@@ -0,0 +1,132 @@
+package proxy;
+
+import packets.DataTypeProvider;
+import packets.builder.PacketBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last status response of the server, so that the proxy can answer server list pings itself. Refreshing the
+ * multiplayer screen then does not need a connection to the server, and does not take up the proxy's connection.
+ * <p>
+ * Once the response is older than the TTL it is still used, but a new one is requested from the server in the
+ * background. If that fails the response is dropped, so that the next ping goes to the server and shows its actual
+ * state.
+ */
+public class StatusCache {
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final int MAX_RESPONSE_SIZE = 1 << 20;
+
+    private final ConnectionDetails connectionDetails;
+    private final long ttlNanos;
+    private final AtomicBoolean refreshing;
+    private volatile Entry entry;
+
+    /**
+     * @param ttlSeconds how long a response is used before it is refreshed, or 0 to disable the cache
+     */
+    public StatusCache(ConnectionDetails connectionDetails, int ttlSeconds) {
+        this.connectionDetails = connectionDetails;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.refreshing = new AtomicBoolean();
+    }
+
+    /**
+     * Get the cached response for clients of the given version. The response includes the server's version, so
+     * clients on a different version are sent to the server instead.
+     * @return the response, or null if there is none
+     */
+    public String get(int protocolVersion) {
+        Entry current = entry;
+        if (ttlNanos <= 0 || current == null || current.protocolVersion != protocolVersion) {
+            return null;
+        }
+
+        if (System.nanoTime() - current.time > ttlNanos) {
+            refresh(protocolVersion);
+        }
+        return current.response;
+    }
+
+    /**
+     * Store a status response received from the server.
+     */
+    public void update(int protocolVersion, String response) {
+        if (ttlNanos > 0) {
+            entry = new Entry(protocolVersion, response, System.nanoTime());
+        }
+    }
+
+    private void refresh(int protocolVersion) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread.ofVirtual().name("Status Refresh").start(() -> {
+            try {
+                update(protocolVersion, requestStatus(protocolVersion));
+            } catch (Exception ex) {
+                entry = null;
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Ask the server for its status over a separate connection. Status packets are never compressed or encrypted, so
+     * a plain socket is enough.
+     */
+    private String requestStatus(int protocolVersion) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(connectionDetails.getRemoteAddress(), TIMEOUT_MILLIS);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+
+            PacketBuilder handshake = new PacketBuilder(0x00);
+            handshake.writeVarInt(protocolVersion);
+            handshake.writeString(connectionDetails.getHost());
+            handshake.writeShort(connectionDetails.getPortRemote());
+            handshake.writeVarInt(1);
+
+            OutputStream out = socket.getOutputStream();
+            out.write(handshake.build());
+            out.write(new PacketBuilder(0x00).build());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int size = readVarInt(in);
+            if (size <= 0 || size > MAX_RESPONSE_SIZE) {
+                throw new IOException("Invalid status response size: " + size);
+            }
+
+            byte[] packet = new byte[size];
+            in.readFully(packet);
+
+            DataTypeProvider provider = DataTypeProvider.ofPacket(packet);
+            if (provider.readVarInt() != 0x00) {
+                throw new IOException("Expected a status response");
+            }
+            return provider.readString();
+        }
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt is too big");
+    }
+
+    private record Entry(int protocolVersion, String response, long time) { }
+}
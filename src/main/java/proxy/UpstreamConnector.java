@@ -0,0 +1,140 @@
+package proxy;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.TimeUnit;
+
+import static util.ExceptionHandling.attempt;
+
+/**
+ * Keeps a connection to the server ready for the next client, so that logging in does not have to wait for the
+ * connection to be set up. The server closes connections that stay quiet for too long, so the spare connection is
+ * replaced well before that happens. Once a session has connected to the server, no spare is kept until that session
+ * ends. Failed attempts are retried with an exponential backoff, so that an unreachable server is not hammered with
+ * connection attempts. Everything here runs on the proxy's selector thread.
+ */
+class UpstreamConnector {
+    // the vanilla server times out connections after 30 seconds without any data
+    private static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(20);
+    private static final long MIN_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_RETRY_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final Selector selector;
+    private final ConnectionDetails connectionDetails;
+
+    private SelectionKey spare;
+    private long createdAt;
+    private long retryAt;
+    private long retryNanos = MIN_RETRY_NANOS;
+    private boolean paused;
+
+    UpstreamConnector(Selector selector, ConnectionDetails connectionDetails) {
+        this.selector = selector;
+        this.connectionDetails = connectionDetails;
+        this.retryAt = System.nanoTime();
+    }
+
+    /**
+     * Make sure there is a fresh spare connection, replacing the current one if it's too old. Called on every pass of
+     * the selector loop.
+     */
+    void maintain() {
+        if (paused) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (spare != null && now - createdAt < MAX_AGE_NANOS) {
+            return;
+        }
+
+        // a connection that lived long enough to be replaced means the server is reachable again
+        if (spare != null && spare.isValid()) {
+            retryNanos = MIN_RETRY_NANOS;
+        }
+
+        discard();
+        if (now - retryAt < 0) {
+            return;
+        }
+
+        createdAt = now;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            spare = channel.register(selector, SelectionKey.OP_CONNECT, this);
+
+            if (channel.connect(connectionDetails.getRemoteAddress())) {
+                spare.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException | UnresolvedAddressException ex) {
+            failed();
+        }
+    }
+
+    /**
+     * Handle a selected key of the spare connection.
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                ((SocketChannel) key.channel()).finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            // the server does not send anything before the handshake, so this means the connection was closed
+            if (key.isReadable()) {
+                failed();
+            }
+        } catch (IOException ex) {
+            failed();
+        }
+    }
+
+    /**
+     * Take the spare connection if it's connected. The key is handed over together with the channel, as the channel
+     * cannot be registered with the selector again until the cancelled key has been cleared by the next select. The
+     * session will be connected to the server either way, so no new spare is made until {@link #resume} is called.
+     * @return the key of the connection, or null if there is no connection ready
+     */
+    SelectionKey take() {
+        paused = true;
+
+        if (spare == null || !spare.isValid() || !((SocketChannel) spare.channel()).isConnected()
+                || System.nanoTime() - createdAt >= MAX_AGE_NANOS) {
+            discard();
+            return null;
+        }
+
+        SelectionKey key = spare;
+        key.interestOps(0);
+        spare = null;
+        retryNanos = MIN_RETRY_NANOS;
+        return key;
+    }
+
+    /**
+     * The session that took the connection has ended, start keeping a spare connection again.
+     */
+    void resume() {
+        paused = false;
+    }
+
+    private void failed() {
+        discard();
+        retryAt = System.nanoTime() + retryNanos;
+        retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+    }
+
+    private void discard() {
+        if (spare == null) { return; }
+
+        attempt(spare.channel()::close);
+        spare = null;
+    }
+}
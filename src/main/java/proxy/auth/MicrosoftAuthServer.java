@@ -88,11 +88,10 @@ public class MicrosoftAuthServer extends NanoHTTPD {
      * Stop server after a few seconds. Can't do it immediately or the user will get an ugly error.
      */
     private void stopDelayed() {
-        Thread stopThread = new Thread(() -> {
+        Thread.ofVirtual().start(() -> {
             attempt(() -> Thread.sleep(5000));
             this.stop();
         });
-        stopThread.start();
     }
 
     public String getShortUrl() {
@@ -0,0 +1,88 @@
+package proxy.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * AES/CFB8 decryption built on top of AES/ECB.
+ * <p>
+ * In CFB8 mode, every byte is XOR'ed with the first byte of the AES encryption of the 16 ciphertext bytes before it.
+ * When decrypting, the ciphertext is known in advance, so the AES input for every byte of a batch can be laid out
+ * up front and encrypted with a single ECB call. This lets the provider run many independent AES blocks at once,
+ * rather than one block at a time like the regular CFB8 implementation. When encrypting, each byte depends on the
+ * ciphertext byte before it, so there is nothing to batch and {@link JceStreamCipher} is used instead.
+ * <p>
+ * The shift register is kept as a sliding window over a larger array of previous ciphertext, so it only needs to be
+ * moved back to the start of the array once every batch instead of being shifted for every byte.
+ */
+public class Cfb8StreamCipher implements StreamCipher {
+    private static final int BLOCK_SIZE = 16;
+    private static final int BATCH_SIZE = 1024;
+
+    private final Cipher ecb;
+
+    // previous ciphertext, the current shift register is the BLOCK_SIZE bytes starting at registerPos
+    private final byte[] feedback;
+    private int registerPos;
+
+    private final byte[] blocks;
+    private final byte[] keystream;
+
+    public Cfb8StreamCipher(byte[] sharedSecret) throws GeneralSecurityException {
+        this.ecb = Cipher.getInstance("AES/ECB/NoPadding");
+        this.ecb.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sharedSecret, "AES"));
+
+        this.feedback = new byte[BLOCK_SIZE + BATCH_SIZE];
+        System.arraycopy(sharedSecret, 0, feedback, 0, BLOCK_SIZE);
+        this.registerPos = 0;
+
+        this.blocks = new byte[BATCH_SIZE * BLOCK_SIZE];
+        this.keystream = new byte[BATCH_SIZE * BLOCK_SIZE];
+    }
+
+    @Override
+    public void update(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        try {
+            decrypt(input, inputOffset, length, output, outputOffset);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not process stream!", ex);
+        }
+    }
+
+    private void decrypt(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) throws GeneralSecurityException {
+        while (length > 0) {
+            int batch = Math.min(length, BATCH_SIZE - registerPos);
+
+            // copy the ciphertext first, as the output may overwrite the input
+            System.arraycopy(input, inputOffset, feedback, registerPos + BLOCK_SIZE, batch);
+
+            // the AES input for each byte is the register at that point, which is a window on the ciphertext
+            for (int i = 0; i < batch; i++) {
+                System.arraycopy(feedback, registerPos + i, blocks, i * BLOCK_SIZE, BLOCK_SIZE);
+            }
+            ecb.update(blocks, 0, batch * BLOCK_SIZE, keystream, 0);
+
+            for (int i = 0; i < batch; i++) {
+                output[outputOffset + i] = (byte) (feedback[registerPos + BLOCK_SIZE + i] ^ keystream[i * BLOCK_SIZE]);
+            }
+
+            registerPos += batch;
+            if (registerPos == BATCH_SIZE) {
+                resetRegister();
+            }
+
+            inputOffset += batch;
+            outputOffset += batch;
+            length -= batch;
+        }
+    }
+
+    /**
+     * Move the register back to the start of the feedback array, so there is room for the next batch.
+     */
+    private void resetRegister() {
+        System.arraycopy(feedback, registerPos, feedback, 0, BLOCK_SIZE);
+        registerPos = 0;
+    }
+}
@@ -0,0 +1,29 @@
+package proxy.encryption;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+
+/**
+ * Available implementations of the AES/CFB8 cipher used to encrypt the connection.
+ */
+public enum CipherEngine {
+    /**
+     * CFB8 on top of AES/ECB, which decrypts in batches. Encryption cannot be batched, so it uses the Java crypto
+     * provider like {@link #JCE}.
+     */
+    BATCHED,
+
+    /**
+     * The Java crypto provider's own AES/CFB8 implementation.
+     */
+    JCE;
+
+    public StreamCipher create(int mode, byte[] sharedSecret) throws GeneralSecurityException {
+        return switch (this) {
+            case BATCHED -> mode == Cipher.DECRYPT_MODE
+                    ? new Cfb8StreamCipher(sharedSecret)
+                    : new JceStreamCipher(mode, sharedSecret);
+            case JCE -> new JceStreamCipher(mode, sharedSecret);
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package proxy.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * Stream cipher using the AES/CFB8 implementation of the Java crypto provider.
+ */
+public class JceStreamCipher implements StreamCipher {
+    private static final String ENCRYPTION_TYPE = "AES/CFB8/NoPadding";
+
+    private final Cipher cipher;
+
+    public JceStreamCipher(int mode, byte[] sharedSecret) throws GeneralSecurityException {
+        this.cipher = Cipher.getInstance(ENCRYPTION_TYPE);
+        this.cipher.init(mode, new SecretKeySpec(sharedSecret, "AES"), new IvParameterSpec(sharedSecret));
+    }
+
+    @Override
+    public void update(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        try {
+            cipher.update(input, inputOffset, length, output, outputOffset);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not process stream!", ex);
+        }
+    }
+}
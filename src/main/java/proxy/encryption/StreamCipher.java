@@ -0,0 +1,17 @@
+package proxy.encryption;
+
+/**
+ * A cipher that processes a continuous stream of bytes, such as the AES/CFB8 cipher used by Minecraft. Output is
+ * always the same length as the input.
+ */
+public interface StreamCipher {
+    /**
+     * Process a range of bytes. The input and output may be the same array at the same offset.
+     * @param input        the array to read from
+     * @param inputOffset  the position of the first byte to read
+     * @param length       the number of bytes to process
+     * @param output       the array to write the result to
+     * @param outputOffset the position to write the first byte to
+     */
+    void update(byte[] input, int inputOffset, int length, byte[] output, int outputOffset);
+}
@@ -0,0 +1,64 @@
+package proxy.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed buckets, written in the Prometheus text format. Recording only increments a
+ * counter, so it can be done from any thread without locking.
+ */
+public class Histogram {
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos;
+    private final LongAdder count;
+
+    /**
+     * @param bounds the upper bounds of the buckets in seconds, in ascending order
+     */
+    public Histogram(double... bounds) {
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.sumNanos = new LongAdder();
+        this.count = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < bounds.length; i++) {
+            if (seconds <= bounds[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Write the buckets, sum and count of this histogram. Prometheus expects the buckets to be cumulative, so each
+     * bucket includes the ones before it.
+     * @param labels labels to add to every line, may be empty
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count()).append('\n');
+
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(suffix).append(count()).append('\n');
+    }
+}
@@ -0,0 +1,120 @@
+package proxy.metrics;
+
+import config.Session;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects metrics about the packets going through the proxy and the background services that process them. These
+ * are served in the Prometheus text format by the {@link MetricsServer}, so that headless instances can be monitored.
+ * Nothing is collected unless the server was started.
+ */
+public class Metrics {
+    private static final String PREFIX = "world_downloader_";
+    private static final double[] SAVE_BUCKETS = { 0.1, 0.5, 1, 5, 10, 30, 60 };
+
+    private static final Map<String, PacketStats> packets = new ConcurrentHashMap<>();
+    private static final Map<QueueKey, IntSupplier> queues = new ConcurrentSkipListMap<>(
+        Comparator.comparing(QueueKey::session).thenComparing(QueueKey::executor)
+    );
+    private static final Histogram saveDuration = new Histogram(SAVE_BUCKETS);
+
+    private static MetricsServer server;
+
+    public static void start(int port) throws IOException {
+        server = new MetricsServer(port);
+        System.out.println("Serving metrics on http://localhost:" + port + MetricsServer.PATH);
+    }
+
+    public static boolean isEnabled() {
+        return server != null;
+    }
+
+    /**
+     * Get the statistics object for the given packet type. Handlers look these up once when they are activated, so
+     * recording a packet does not require a map lookup.
+     */
+    public static PacketStats packet(boolean clientBound, String packetType) {
+        return packets.computeIfAbsent(direction(clientBound) + ":" + packetType, k -> new PacketStats());
+    }
+
+    /**
+     * Register the queue depth of an executor, which is read every time the metrics are requested. Each session has
+     * its own executors, so they are registered under the session of the current thread.
+     */
+    public static void registerQueue(String executor, IntSupplier depth) {
+        queues.put(new QueueKey(Session.current().getName(), executor), depth);
+    }
+
+    public static void recordSave(long nanos) {
+        saveDuration.record(nanos);
+    }
+
+    private static String direction(boolean clientBound) {
+        return clientBound ? "clientbound" : "serverbound";
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format.
+     */
+    static String write() {
+        StringBuilder out = new StringBuilder();
+
+        // sort by direction and packet type so the output is stable
+        Map<String, PacketStats> sorted = new TreeMap<>(packets);
+        sorted.values().removeIf(stats -> stats.count.sum() == 0);
+
+        header(out, "packets_total", "counter", "Number of packets received, by packet type and direction.");
+        sorted.forEach((key, stats) -> line(out, "packets_total", labels(key), stats.count.sum()));
+
+        header(out, "packet_bytes_total", "counter", "Size of received packets as sent over the network, before decompression.");
+        sorted.forEach((key, stats) -> line(out, "packet_bytes_total", labels(key), stats.bytes.sum()));
+
+        header(out, "packet_decompressed_bytes_total", "counter", "Size of parsed packets after decompression. Packets without a handler are not decompressed.");
+        sorted.forEach((key, stats) -> line(out, "packet_decompressed_bytes_total", labels(key), stats.decompressedBytes.sum()));
+
+        header(out, "packet_handler_seconds", "histogram", "Time spent in the packet handler, by packet type and direction.");
+        sorted.forEach((key, stats) -> {
+            if (stats.handlerTime.count() > 0) {
+                stats.handlerTime.write(out, PREFIX + "packet_handler_seconds", labels(key));
+            }
+        });
+
+        header(out, "executor_queue_depth", "gauge", "Number of tasks waiting to be run by the executor.");
+        queues.forEach((key, depth) -> line(out, "executor_queue_depth", key.labels(), depth.getAsInt()));
+
+        header(out, "save_duration_seconds", "histogram", "Time taken to save the world.");
+        saveDuration.write(out, PREFIX + "save_duration_seconds", "");
+
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void line(StringBuilder out, String name, String labels, long value) {
+        out.append(PREFIX).append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String labels(String key) {
+        String[] parts = key.split(":", 2);
+        return "direction=\"" + parts[0] + "\",packet=\"" + escape(parts[1]) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private record QueueKey(String session, String executor) {
+        String labels() {
+            return "session=\"" + escape(session) + "\",executor=\"" + escape(executor) + "\"";
+        }
+    }
+}
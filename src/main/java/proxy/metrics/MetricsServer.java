@@ -0,0 +1,29 @@
+package proxy.metrics;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.IOException;
+
+/**
+ * Serves the collected metrics over HTTP, so they can be scraped by Prometheus. Only listens on the loopback
+ * interface.
+ */
+public class MetricsServer extends NanoHTTPD {
+    public static final String PATH = "/metrics";
+    private static final String MIME_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    MetricsServer(int port) throws IOException {
+        super("127.0.0.1", port);
+
+        // daemon threads, so the server does not keep the application running
+        start(SOCKET_READ_TIMEOUT, true);
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        if (!session.getUri().equals(PATH)) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not found");
+        }
+        return newFixedLengthResponse(Response.Status.OK, MIME_PROMETHEUS, Metrics.write());
+    }
+}
@@ -0,0 +1,34 @@
+package proxy.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics for a single packet type in one direction.
+ */
+public class PacketStats {
+    private static final double[] HANDLER_BUCKETS = { 0.00001, 0.0001, 0.001, 0.01, 0.1, 1 };
+
+    final LongAdder count = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder decompressedBytes = new LongAdder();
+    final Histogram handlerTime = new Histogram(HANDLER_BUCKETS);
+
+    /**
+     * Called for every packet of this type, whether it is parsed or not.
+     * @param size the size of the packet as sent, so possibly compressed
+     */
+    public void onPacket(int size) {
+        count.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * Called when a packet of this type was parsed by its handler.
+     * @param decompressedSize the size of the packet after decompression
+     * @param nanos            the time taken by the handler
+     */
+    public void onParsed(int decompressedSize, long nanos) {
+        decompressedBytes.add(decompressedSize);
+        handlerTime.record(nanos);
+    }
+}
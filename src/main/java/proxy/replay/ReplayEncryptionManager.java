@@ -0,0 +1,39 @@
+package proxy.replay;
+
+import config.Session;
+import proxy.CompressionManager;
+import proxy.EncryptionManager;
+
+/**
+ * Encryption manager used when replaying a recording. Recordings contain the decrypted data, so encryption is never
+ * enabled, and there is nobody to send data to. Anything that would be sent to the client or server is dropped.
+ */
+public class ReplayEncryptionManager extends EncryptionManager {
+    public ReplayEncryptionManager(Session session, CompressionManager compressionManager) {
+        super(session, compressionManager);
+    }
+
+    @Override
+    public void streamToClient(byte[] bytes, int offset, int length) { }
+
+    @Override
+    public void streamToServer(byte[] bytes, int offset, int length) { }
+
+    @Override
+    public void flushToClient() { }
+
+    @Override
+    public void sendMaskedHandshake(int protocolVersion, int nextMode, String hostExtension) { }
+
+    @Override
+    public void setServerEncryptionRequest(byte[] encoded, byte[] nonce, String serverId) { }
+
+    @Override
+    public void setServerEncryptionRequest(byte[] encoded, byte[] nonce, String serverId, boolean shouldAuthenticate) { }
+
+    @Override
+    public void setClientEncryptionConfirmation(byte[] encryptedSharedSecret, byte[] token) { }
+
+    @Override
+    public void setClientEncryptionConfirmation(byte[] encryptedSharedSecret, byte[] salt, byte[] signature) { }
+}
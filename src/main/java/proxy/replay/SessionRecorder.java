@@ -0,0 +1,100 @@
+package proxy.replay;
+
+import game.NetworkMode;
+import proxy.ByteConsumer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static util.ExceptionHandling.attempt;
+
+/**
+ * Records the traffic going through the proxy, so that it can be replayed later without a connection. Data is
+ * recorded after it is decrypted but before it is parsed, which is exactly what the data readers need to process it
+ * again. Changes to the protocol version and network mode are recorded as well, so that the replay can verify it
+ * ends up in the same state.
+ * <p>
+ * The recording is a sequence of events, each starting with its type and the time in nanoseconds since the start of
+ * the recording.
+ */
+public class SessionRecorder {
+    static final int MAGIC = 0x57444c52;
+    static final int FORMAT_VERSION = 1;
+
+    static final byte SERVER_BOUND_DATA = 0;
+    static final byte CLIENT_BOUND_DATA = 1;
+    static final byte MODE = 2;
+    static final byte PROTOCOL_VERSION = 3;
+    static final byte RESET = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final long start;
+
+    public SessionRecorder(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(FORMAT_VERSION);
+        this.start = System.nanoTime();
+
+        // the application is usually closed without disconnecting first, make sure the end is written
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Session Recorder"));
+
+        System.out.println("Recording session to " + path);
+    }
+
+    /**
+     * Get a consumer that records data going in the given direction.
+     */
+    public ByteConsumer stream(boolean clientBound) {
+        byte type = clientBound ? CLIENT_BOUND_DATA : SERVER_BOUND_DATA;
+        return (arr, offset, length) -> recordData(type, arr, offset, length);
+    }
+
+    private synchronized void recordData(byte type, byte[] arr, int offset, int length) throws IOException {
+        writeEvent(type);
+        out.writeInt(length);
+        out.write(arr, offset, length);
+    }
+
+    public synchronized void recordMode(NetworkMode mode) {
+        attempt(() -> {
+            writeEvent(MODE);
+            out.writeByte(mode.ordinal());
+        });
+    }
+
+    public synchronized void recordProtocolVersion(int protocolVersion) {
+        attempt(() -> {
+            writeEvent(PROTOCOL_VERSION);
+            out.writeInt(protocolVersion);
+        });
+    }
+
+    /**
+     * The connection was lost. Everything up to this point is written to disk, so the recording is usable even if
+     * the application does not shut down cleanly.
+     */
+    public synchronized void recordReset() {
+        attempt(() -> {
+            writeEvent(RESET);
+            out.flush();
+        });
+    }
+
+    private void writeEvent(byte type) throws IOException {
+        out.writeByte(type);
+        out.writeLong(System.nanoTime() - start);
+    }
+
+    public synchronized void close() {
+        attempt(out::close);
+    }
+}
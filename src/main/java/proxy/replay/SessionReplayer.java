@@ -0,0 +1,157 @@
+package proxy.replay;
+
+import game.NetworkMode;
+import game.data.WorldManager;
+import packets.DataReader;
+import proxy.ConnectionManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static util.ExceptionHandling.attempt;
+
+/**
+ * Feeds a recording made by {@link SessionRecorder} back through the data readers and the regular packet handlers,
+ * without any network connection. Data can be replayed with the original timing, or as fast as it can be processed
+ * which is useful to measure how fast packets are handled.
+ * <p>
+ * Once the recording has been replayed the world is saved and the application exits, with a non-zero status if the
+ * recording could not be read or the replay did not end up in the same state as the recording.
+ */
+public class SessionReplayer extends Thread {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final boolean realTime;
+    private final ConnectionManager connectionManager;
+    private final DataReader serverBound;
+    private final DataReader clientBound;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private long bytesReplayed;
+    private long start;
+    private boolean inSync = true;
+
+    public SessionReplayer(Path path, boolean realTime, ConnectionManager connectionManager, DataReader serverBound, DataReader clientBound) {
+        this.path = path;
+        this.realTime = realTime;
+        this.connectionManager = connectionManager;
+        this.serverBound = serverBound;
+        this.clientBound = clientBound;
+
+        setName("Session Replay");
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Replaying session from " + path + (realTime ? " with original timing" : ""));
+
+        boolean success = replay();
+
+        // nothing else is going to happen without a connection, so save what we have and stop
+        WorldManager worldManager = connectionManager.getSession().getWorldManager();
+        worldManager.shutdown();
+        worldManager.save();
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * Replay the whole recording.
+     * @return true if the recording was replayed and stayed in sync
+     */
+    boolean replay() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != SessionRecorder.MAGIC) {
+                throw new IOException("Not a session recording: " + path);
+            }
+            int formatVersion = in.readInt();
+            if (formatVersion != SessionRecorder.FORMAT_VERSION) {
+                throw new IOException("Unsupported recording format version " + formatVersion);
+            }
+
+            start = System.nanoTime();
+            while (readEvent(in)) { }
+
+            // packets that are not handled right away are still being parsed, wait for them to be done
+            awaitParsed();
+        } catch (IOException ex) {
+            System.err.println("Could not replay session: " + ex.getMessage());
+            return false;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replay finished: %.1f MB in %.2f s (%.1f MB/s)%n",
+            bytesReplayed / 1e6, seconds, bytesReplayed / 1e6 / seconds);
+        return inSync;
+    }
+
+    private void awaitParsed() {
+        serverBound.awaitParsed();
+        clientBound.awaitParsed();
+    }
+
+    /**
+     * Read the next event from the recording and replay it.
+     * @return false if the end of the recording was reached
+     */
+    private boolean readEvent(DataInputStream in) throws IOException {
+        byte type;
+        try {
+            type = in.readByte();
+        } catch (EOFException ex) {
+            return false;
+        }
+
+        long time = in.readLong();
+        switch (type) {
+            case SessionRecorder.SERVER_BOUND_DATA, SessionRecorder.CLIENT_BOUND_DATA -> {
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+
+                waitUntil(time);
+                DataReader reader = type == SessionRecorder.CLIENT_BOUND_DATA ? clientBound : serverBound;
+                reader.pushData(buffer, length);
+                bytesReplayed += length;
+            }
+            case SessionRecorder.MODE -> {
+                NetworkMode expected = NetworkMode.values()[in.readByte()];
+
+                // the mode is changed by the packet handlers, so anything before this point has to be handled first
+                awaitParsed();
+                if (connectionManager.getMode() != expected) {
+                    System.out.println("Replay out of sync: expected mode " + expected + " but was " + connectionManager.getMode());
+                    inSync = false;
+                }
+            }
+            case SessionRecorder.PROTOCOL_VERSION -> System.out.println("Recorded protocol version: " + in.readInt());
+            case SessionRecorder.RESET -> {
+                waitUntil(time);
+                connectionManager.reset();
+            }
+            default -> throw new IOException("Unknown event type " + type + " in recording");
+        }
+        return true;
+    }
+
+    /**
+     * When replaying with the original timing, wait until the given time since the start of the replay.
+     */
+    private void waitUntil(long time) {
+        if (!realTime) {
+            return;
+        }
+
+        long remaining = start + time - System.nanoTime();
+        if (remaining > 0) {
+            attempt(() -> TimeUnit.NANOSECONDS.sleep(remaining));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package game.data.chunk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import game.data.coordinates.CoordinateDim2D;
+import game.data.dimension.Dimension;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import packets.DataTypeProvider;
+
+class ChunkFactoryTest {
+    private final CoordinateDim2D pos = new CoordinateDim2D(0, 0, Dimension.OVERWORLD);
+
+    @Test
+    void orphansExpireOldestFirst() {
+        long now = System.currentTimeMillis();
+        UnparsedChunk fresh = new UnparsedChunk(pos, now);
+        UnparsedChunk old = new UnparsedChunk(pos, now - 11_000);
+        UnparsedChunk oldest = new UnparsedChunk(pos, now - 12_000);
+
+        DelayQueue<UnparsedChunk> orphans = new DelayQueue<>();
+        orphans.add(fresh);
+        orphans.add(old);
+        orphans.add(oldest);
+
+        assertThat(fresh.isStale()).isFalse();
+        assertThat(fresh.getDelay(TimeUnit.MILLISECONDS)).isPositive();
+        assertThat(old.isStale()).isTrue();
+
+        assertThat(orphans.poll()).isSameAs(oldest);
+        assertThat(orphans.poll()).isSameAs(old);
+        assertThat(orphans.poll()).isNull();
+        assertThat(orphans).containsExactly(fresh);
+    }
+
+    /**
+     * Light data that arrives before its chunk should not hold on to the buffer it was read from.
+     */
+    @Test
+    void orphanedLightIsCopied() {
+        byte[] buffer = { 1, 2, 3, 4 };
+        DataTypeProvider provider = new DataTypeProvider(buffer, 1, 2);
+
+        ChunkFactory factory = new ChunkFactory();
+        factory.updateLight(pos, provider);
+        buffer[1] = 9;
+
+        DataTypeProvider lighting = factory.getUnparsed(pos).lighting;
+        assertThat(lighting.debug__getFullArray()).isNotSameAs(buffer);
+        assertThat(lighting.readNext()).isEqualTo((byte) 2);
+        assertThat(lighting.readNext()).isEqualTo((byte) 3);
+        assertThat(lighting.hasNext()).isFalse();
+    }
+}
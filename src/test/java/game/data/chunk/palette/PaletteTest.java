@@ -0,0 +1,63 @@
+package game.data.chunk.palette;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import config.Config;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class PaletteTest {
+
+    @BeforeAll
+    public static void setup() {
+        Config cfg = mock(Config.class);
+        Config.setInstance(cfg);
+    }
+
+    @Test
+    public void getIndexForAddsMissingStates() {
+        Palette palette = new Palette(new int[] { 0, 12 });
+
+        assertThat(palette.indexOf(42)).isEqualTo(-1);
+        assertThat(palette.getIndexFor(12)).isEqualTo(1);
+        assertThat(palette.getIndexFor(42)).isEqualTo(2);
+        assertThat(palette.getIndexFor(42)).isEqualTo(2);
+        assertThat(palette.indexOf(42)).isEqualTo(2);
+
+        assertThat(palette.size()).isEqualTo(3);
+        assertThat(palette.getPalette()).containsExactly(0, 12, 42);
+    }
+
+    @Test
+    public void growsPastInitialSize() {
+        Palette palette = new Palette(new int[] { 0 });
+        for (int i = 1; i <= 100; i++) {
+            assertThat(palette.getIndexFor(i * 7)).isEqualTo(i);
+        }
+
+        for (int i = 0; i <= 100; i++) {
+            assertThat(palette.indexOf(i * 7)).isEqualTo(i);
+            assertThat(palette.stateFromId(i)).isEqualTo(i * 7);
+        }
+        assertThat(palette.indexOf(1)).isEqualTo(-1);
+        assertThat(palette.size()).isEqualTo(101);
+        assertThat(palette.getBitsPerBlock()).isEqualTo(7);
+    }
+
+    @Test
+    public void withStateLeavesOriginal() {
+        Palette original = new Palette(new int[] { 0, 12 });
+        assertThat(original.indexOf(42)).isEqualTo(-1);
+
+        Palette copy = original.withState(42);
+
+        assertThat(copy.indexOf(42)).isEqualTo(2);
+        assertThat(copy.indexOf(12)).isEqualTo(1);
+        assertThat(copy.size()).isEqualTo(3);
+
+        assertThat(original.indexOf(42)).isEqualTo(-1);
+        assertThat(original.size()).isEqualTo(2);
+        assertThat(original.getPalette()).containsExactly(0, 12);
+    }
+}
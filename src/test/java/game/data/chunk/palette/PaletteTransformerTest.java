@@ -29,8 +29,7 @@ public class PaletteTransformerTest {
         for (int z = 0; z < 16; z++) {
             for (int x = 0; x < 16; x++) {
                 for (int y = 0; y < 16; y++) {
-                    ble.setTo(x, y, z, oldPalette.getBitsPerBlock());
-                    ble.write(blocks, i++);
+                    ble.write(blocks, x, y, z, oldPalette.getBitsPerBlock(), i++);
                 }
             }
         }
@@ -45,11 +44,9 @@ public class PaletteTransformerTest {
         for (int z = 0; z < 16; z++) {
             for (int x = 0; x < 16; x++) {
                 for (int y = 0; y < 16; y++) {
-                    ble.setTo(x, y, z, newPalette.getBitsPerBlock());
-
                     assertThat(i++)
                         .as(x + ", " + y  + ", " + z )
-                        .isEqualTo(ble.fetch(newBlocks));
+                        .isEqualTo(ble.fetch(newBlocks, x, y, z, newPalette.getBitsPerBlock()));
                 }
             }
         }
@@ -0,0 +1,65 @@
+package game.data.chunk.palette;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class StateIndexTest {
+
+    @Test
+    public void collidingStates() {
+        // four states that all hash to the same slot of the smallest table, only three of which are in the palette
+        int[] colliding = new int[4];
+        int found = 0;
+        for (int state = 1; found < colliding.length; state++) {
+            if ((StateIndex.hash(state) & 7) == (StateIndex.hash(0) & 7)) {
+                colliding[found++] = state;
+            }
+        }
+
+        int[] palette = Arrays.copyOf(colliding, 3);
+        StateIndex index = new StateIndex(palette, palette.length);
+
+        for (int i = 0; i < palette.length; i++) {
+            assertThat(index.find(palette, palette[i])).isEqualTo(i);
+        }
+        assertThat(index.find(palette, colliding[3])).isEqualTo(-1);
+    }
+
+    @Test
+    public void missingStates() {
+        int[] palette = { 5, 7, 9 };
+        StateIndex index = new StateIndex(palette, palette.length);
+
+        assertThat(index.find(palette, 0)).isEqualTo(-1);
+        assertThat(index.find(palette, 6)).isEqualTo(-1);
+        assertThat(index.find(palette, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void duplicatesUseFirstIndex() {
+        int[] palette = { 5, 7, 5 };
+        StateIndex index = new StateIndex(palette, palette.length);
+
+        assertThat(index.find(palette, 5)).isEqualTo(0);
+        assertThat(index.find(palette, 7)).isEqualTo(1);
+    }
+
+    @Test
+    public void growsWhenStatesAreAdded() {
+        int[] palette = new int[1000];
+        StateIndex index = new StateIndex(palette, 1);
+
+        for (int i = 1; i < palette.length; i++) {
+            palette[i] = i * 31;
+            index.add(palette, i);
+        }
+
+        for (int i = 0; i < palette.length; i++) {
+            assertThat(index.find(palette, i * 31)).isEqualTo(i);
+        }
+        assertThat(index.find(palette, 1)).isEqualTo(-1);
+        assertThat(index.find(palette, palette.length * 31)).isEqualTo(-1);
+    }
+}
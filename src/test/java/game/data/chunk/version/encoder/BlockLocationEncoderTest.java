@@ -0,0 +1,73 @@
+package game.data.chunk.version.encoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import game.data.chunk.ChunkSection;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class BlockLocationEncoderTest {
+
+    @Test
+    public void unpackMatchesFetch() {
+        checkUnpack(new BlockLocationEncoder());
+        checkUnpack(new BlockLocationEncoder_1_16());
+    }
+
+    @Test
+    public void packMatchesWrite() {
+        checkPack(new BlockLocationEncoder());
+        checkPack(new BlockLocationEncoder_1_16());
+    }
+
+    private void checkUnpack(BlockLocationEncoder encoder) {
+        Random random = new Random(0);
+        for (int bits = 1; bits <= 15; bits++) {
+            long[] blocks = new long[1024];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = random.nextLong();
+            }
+
+            int[] values = new int[4096];
+            encoder.unpack(blocks, bits, values);
+
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        assertThat(values[ChunkSection.getBlockIndex(x, y, z)])
+                            .as(bits + " bits at " + x + ", " + y + ", " + z)
+                            .isEqualTo(encoder.fetch(blocks, x, y, z, bits));
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkPack(BlockLocationEncoder encoder) {
+        Random random = new Random(0);
+        for (int bits = 1; bits <= 15; bits++) {
+            int[] values = new int[4096];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(1 << bits);
+            }
+
+            long[] packed = new long[1024];
+            encoder.pack(values, bits, packed);
+
+            int[] unpacked = new int[4096];
+            encoder.unpack(packed, bits, unpacked);
+            assertThat(unpacked).as(bits + " bits").isEqualTo(values);
+
+            // writing every value separately should give the same result as packing them
+            long[] written = new long[1024];
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        encoder.write(written, x, y, z, bits, values[ChunkSection.getBlockIndex(x, y, z)]);
+                    }
+                }
+            }
+            assertThat(written).as(bits + " bits").isEqualTo(packed);
+        }
+    }
+}
@@ -6,7 +6,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import packets.DataTypeProvider;
 import packets.UUID;
-import packets.lib.ByteQueue;
 import packets.version.DataTypeProvider_1_13;
 import packets.version.DataTypeProvider_1_14;
 import se.llbit.nbt.*;
@@ -16,6 +15,7 @@ import java.util.BitSet;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PacketBuilderAndParserTest {
 
@@ -36,11 +36,7 @@ public class PacketBuilderAndParserTest {
      * Get a DataTypeProvider built from the exiting packet builder.
      */
     protected DataTypeProvider getParser() {
-        ByteQueue built = builder.build();
-        byte[] arr = new byte[built.size()];
-        built.copyTo(arr);
-
-        parser = new DataTypeProvider_1_14(arr);
+        parser = new DataTypeProvider_1_14(builder.build());
         int length = parser.readVarInt();
         assertThat(length).isGreaterThan(0);
 
@@ -236,4 +232,36 @@ public class PacketBuilderAndParserTest {
 
         assertThat(after).isEqualTo(new Coordinate3D(x, y, z));
     }
+
+    @Test
+    void readsStopAtLimit() {
+        builder.writeInt(1);
+        builder.writeLong(2);
+        builder.writeInt(3);
+
+        // a view on the first 6 bytes of the payload, the remaining bytes belong to the next packet
+        DataTypeProvider outer = getParser();
+        parser = outer.ofLength(6);
+        outer.skip(outer.remaining());
+
+        assertThat(parser.readInt()).isEqualTo(1);
+        assertThatThrownBy(parser::readLong).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> parser.readLongArray(1)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> parser.readByteArray(3)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(parser.readByteArray(2)).containsExactly(0, 0);
+        assertThatThrownBy(parser::readNext).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> parser.skip(1)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(parser.remaining()).isZero();
+    }
+
+    @Test
+    void longArrayOfUnexpectedSize() {
+        builder.writeLong(1);
+        builder.writeLong(2);
+        builder.writeLong(3);
+
+        getParser();
+        assertThat(parser.readLongArray(1, 2)).containsExactly(1, 0);
+        assertThat(parser.readLongArray(2, 1)).containsExactly(2);
+    }
 }
\ No newline at end of file
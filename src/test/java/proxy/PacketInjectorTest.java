@@ -0,0 +1,198 @@
+package proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import config.Config;
+import config.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import packets.DataTypeProvider;
+import packets.builder.PacketBuilder;
+
+class PacketInjectorTest {
+    // ids of the packets we inject ourselves, well outside the range used by the game
+    private static final int PACKET_ID = 0x100;
+
+    private final Session session = new Session("PacketInjectorTest", null);
+    private final EncryptionManager encryptionManager = mock(EncryptionManager.class);
+    private final List<String> sent = new ArrayList<>();
+    private PacketInjector injector;
+
+    @BeforeAll
+    static void setup() {
+        Config.setInstance(new Config());
+    }
+
+    /**
+     * Create an injector for the given protocol version that is only flushed when the test asks for it. Packets sent
+     * to the client are decoded into a readable form, so that the order can be checked.
+     */
+    private void start(int protocolVersion) throws IOException {
+        session.setProtocolVersion(protocolVersion);
+        doAnswer(invocation -> {
+            byte[] arr = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            sent.add(describe(Arrays.copyOfRange(arr, offset, offset + length)));
+            return null;
+        }).when(encryptionManager).streamToClient(any(byte[].class), anyInt(), anyInt());
+
+        injector = new PacketInjector(session, encryptionManager, new CompressionManager(), null);
+        injector.setInGame(true);
+    }
+
+    private String describe(byte[] packet) {
+        DataTypeProvider provider = new DataTypeProvider(packet);
+        provider.readVarInt();
+        int packetId = provider.readVarInt();
+        if (packetId >= PACKET_ID) {
+            return "packet " + (packetId - PACKET_ID);
+        }
+
+        String name = session.getVersionReporter().getProtocol().get(packetId, true);
+        if (name.equals("ChunkBatchFinished")) {
+            return name + " " + provider.readVarInt();
+        }
+        return name;
+    }
+
+    private PacketBuilder packet(int number, int size) {
+        PacketBuilder packet = new PacketBuilder(PACKET_ID + number);
+        packet.writeByteArray(new byte[size]);
+        return packet;
+    }
+
+    private void chunk(int number) {
+        injector.enqueueChunk(packet(number, 0));
+    }
+
+    private void other(int number) {
+        injector.enqueuePacket(packet(number, 0));
+    }
+
+    private void flush() {
+        session.run(injector::flush);
+    }
+
+    private boolean acknowledge(float chunksPerTick) {
+        boolean[] forward = new boolean[1];
+        session.run(() -> forward[0] = injector.onBatchReceived(chunksPerTick));
+        return forward[0];
+    }
+
+    private List<String> takeSent() {
+        List<String> res = new ArrayList<>(sent);
+        sent.clear();
+        return res;
+    }
+
+    @Test
+    void injectedBatchIsNotForwarded() throws IOException {
+        start(765);
+        chunk(1);
+        other(2);
+        chunk(3);
+        flush();
+
+        assertThat(takeSent()).containsExactly(
+            "ChunkBatchStart", "packet 1", "packet 2", "packet 3", "ChunkBatchFinished 2"
+        );
+
+        // nothing more is sent until the client has acknowledged our batch
+        chunk(4);
+        flush();
+        assertThat(takeSent()).isEmpty();
+
+        assertThat(acknowledge(9)).isFalse();
+        flush();
+        assertThat(takeSent()).containsExactly("ChunkBatchStart", "packet 4", "ChunkBatchFinished 1");
+    }
+
+    @Test
+    void waitsForServerBatch() throws IOException {
+        start(765);
+        session.run(injector::onServerBatchStart);
+        chunk(1);
+        flush();
+        assertThat(takeSent()).isEmpty();
+
+        session.run(() -> injector.onServerBatchFinished(5));
+        flush();
+        assertThat(takeSent()).containsExactly(
+            "ChunkBatchFinished 5", "ChunkBatchStart", "packet 1", "ChunkBatchFinished 1"
+        );
+
+        // acknowledgements come in the order the batches were sent, only the server's one is forwarded
+        assertThat(acknowledge(9)).isTrue();
+        assertThat(acknowledge(9)).isFalse();
+    }
+
+    @Test
+    void quotaCarriesOver() throws IOException {
+        start(765);
+
+        // no batches were sent yet, so this is forwarded but still sets the rate
+        assertThat(acknowledge(0.5f)).isTrue();
+
+        chunk(1);
+        chunk(2);
+        other(3);
+
+        flush();
+        assertThat(takeSent()).isEmpty();
+        flush();
+        assertThat(takeSent()).containsExactly("ChunkBatchStart", "packet 1", "ChunkBatchFinished 1");
+
+        // the packet after the second chunk waits for it, so the order does not change
+        assertThat(acknowledge(0.5f)).isFalse();
+        flush();
+        assertThat(takeSent()).isEmpty();
+        flush();
+        assertThat(takeSent()).containsExactly("ChunkBatchStart", "packet 2", "packet 3", "ChunkBatchFinished 1");
+    }
+
+    @Test
+    void nothingSentOutsideOfGame() throws IOException {
+        start(765);
+        chunk(1);
+        injector.setInGame(false);
+        injector.setInGame(true);
+        flush();
+
+        assertThat(takeSent()).isEmpty();
+        assertThat(injector.size()).isZero();
+    }
+
+    /**
+     * Before 1.20.2 packets are limited by the injection rate. A packet larger than the budget is still sent, but
+     * leaves a debt that has to be paid off before anything else is sent.
+     */
+    @Test
+    void rateLimitAllowsDebt() throws IOException, InterruptedException {
+        start(340);
+        int rate = Config.getInjectionRate() * 1024;
+        injector.enqueuePacket(packet(1, rate / 2));
+        other(2);
+
+        // the budget starts empty, and is filled up to a tick's worth of data
+        Thread.sleep(100);
+        flush();
+        assertThat(takeSent()).containsExactly("packet 1");
+
+        flush();
+        assertThat(takeSent()).isEmpty();
+
+        // the debt takes about half a second to pay off
+        Thread.sleep(1000);
+        flush();
+        assertThat(takeSent()).containsExactly("packet 2");
+    }
+}
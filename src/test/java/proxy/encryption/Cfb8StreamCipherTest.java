@@ -0,0 +1,55 @@
+package proxy.encryption;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Cfb8StreamCipherTest {
+    private static final int DATA_SIZE = 1 << 16;
+
+    private final Random random = new Random(42);
+    private final byte[] sharedSecret = randomBytes(16);
+    private final byte[] data = randomBytes(DATA_SIZE);
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Process the data with both implementations in chunks of random sizes, so that we cross batch boundaries at
+     * different positions.
+     */
+    @Test
+    void decryptMatchesJce() throws Exception {
+        StreamCipher expected = new JceStreamCipher(Cipher.DECRYPT_MODE, sharedSecret);
+        StreamCipher actual = new Cfb8StreamCipher(sharedSecret);
+
+        byte[] expectedOutput = new byte[DATA_SIZE];
+        byte[] actualOutput = new byte[DATA_SIZE];
+
+        int pos = 0;
+        while (pos < DATA_SIZE) {
+            int length = Math.min(DATA_SIZE - pos, random.nextInt(3000));
+            expected.update(data, pos, length, expectedOutput, pos);
+            actual.update(data, pos, length, actualOutput, pos);
+            pos += length;
+        }
+
+        assertThat(actualOutput).isEqualTo(expectedOutput);
+    }
+
+    @Test
+    void decryptInPlace() throws Exception {
+        byte[] encrypted = new byte[DATA_SIZE];
+        new JceStreamCipher(Cipher.ENCRYPT_MODE, sharedSecret).update(data, 0, DATA_SIZE, encrypted, 0);
+
+        new Cfb8StreamCipher(sharedSecret).update(encrypted, 0, DATA_SIZE, encrypted, 0);
+
+        assertThat(encrypted).isEqualTo(data);
+    }
+}
@@ -0,0 +1,66 @@
+package proxy.encryption;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+/**
+ * Compares the throughput of the cipher engines. Every operation processes 1 MiB, so the reported number of
+ * operations per second is the throughput in MiB/s. Run using the main method after compiling the test sources.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StreamCipherBenchmark {
+    private static final int DATA_SIZE = 1 << 20;
+
+    @Param({ "BATCHED", "JCE" })
+    public CipherEngine engine;
+
+    @Param({ "ENCRYPT", "DECRYPT" })
+    public String mode;
+
+    private StreamCipher cipher;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        Random random = new Random(0);
+        byte[] sharedSecret = new byte[16];
+        random.nextBytes(sharedSecret);
+
+        input = new byte[DATA_SIZE];
+        random.nextBytes(input);
+        output = new byte[DATA_SIZE];
+
+        int cipherMode = mode.equals("ENCRYPT") ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        cipher = engine.create(cipherMode, sharedSecret);
+    }
+
+    @Benchmark
+    public byte[] update() {
+        cipher.update(input, 0, DATA_SIZE, output, 0);
+        return output;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StreamCipherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
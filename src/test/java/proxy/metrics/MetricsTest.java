@@ -0,0 +1,45 @@
+package proxy.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import config.Session;
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+    @Test
+    void packetCounters() {
+        PacketStats stats = Metrics.packet(true, "MetricsTestPacket");
+        assertThat(Metrics.packet(true, "MetricsTestPacket")).isSameAs(stats);
+
+        stats.onPacket(100);
+        stats.onPacket(50);
+        stats.onParsed(400, 5_000);
+
+        String out = Metrics.write();
+        String labels = "{direction=\"clientbound\",packet=\"MetricsTestPacket\"}";
+        assertThat(out)
+            .contains("# TYPE world_downloader_packets_total counter\n")
+            .contains("world_downloader_packets_total" + labels + " 2\n")
+            .contains("world_downloader_packet_bytes_total" + labels + " 150\n")
+            .contains("world_downloader_packet_decompressed_bytes_total" + labels + " 400\n")
+            .contains("world_downloader_packet_handler_seconds_bucket{direction=\"clientbound\",packet=\"MetricsTestPacket\",le=\"1.0E-5\"} 1\n")
+            .contains("world_downloader_packet_handler_seconds_count" + labels + " 1\n");
+    }
+
+    @Test
+    void unusedPacketsAreNotWritten() {
+        Metrics.packet(false, "MetricsTestUnused");
+
+        assertThat(Metrics.write()).doesNotContain("MetricsTestUnused");
+    }
+
+    @Test
+    void queuesPerSession() {
+        Metrics.registerQueue("Metrics Test Service", () -> 3);
+        new Session("other \"session\"", null).run(() -> Metrics.registerQueue("Metrics Test Service", () -> 7));
+
+        assertThat(Metrics.write())
+            .contains("world_downloader_executor_queue_depth{session=\"Main\",executor=\"Metrics Test Service\"} 3\n")
+            .contains("world_downloader_executor_queue_depth{session=\"other \\\"session\\\"\",executor=\"Metrics Test Service\"} 7\n");
+    }
+}
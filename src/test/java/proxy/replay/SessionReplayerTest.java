@@ -0,0 +1,94 @@
+package proxy.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import game.NetworkMode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import packets.DataReader;
+import proxy.ConnectionManager;
+
+class SessionReplayerTest {
+    @TempDir
+    Path dir;
+
+    private final DataReader serverBound = mock(DataReader.class);
+    private final DataReader clientBound = mock(DataReader.class);
+    private final ConnectionManager connectionManager = mock(ConnectionManager.class);
+
+    private final List<byte[]> serverBoundData = new ArrayList<>();
+    private final List<byte[]> clientBoundData = new ArrayList<>();
+
+    /**
+     * Records some data in both directions with a mode change in between, and checks that the replay feeds the same
+     * data to the same readers in the same order.
+     */
+    @Test
+    void roundTrip() throws IOException {
+        Path path = dir.resolve("session.rec");
+        SessionRecorder recorder = new SessionRecorder(path);
+        recorder.stream(false).consume(new byte[] { 9, 1, 2, 3, 9 }, 1, 3);
+        recorder.recordProtocolVersion(767);
+        recorder.recordMode(NetworkMode.LOGIN);
+        recorder.stream(true).consume(new byte[] { 4, 5 }, 0, 2);
+        recorder.stream(false).consume(new byte[] { 6 }, 0, 1);
+        recorder.recordReset();
+        recorder.close();
+
+        when(connectionManager.getMode()).thenReturn(NetworkMode.LOGIN);
+        assertThat(replayer(path).replay()).isTrue();
+
+        assertThat(serverBoundData).containsExactly(new byte[] { 1, 2, 3 }, new byte[] { 6 });
+        assertThat(clientBoundData).containsExactly(new byte[] { 4, 5 });
+        verify(connectionManager).reset();
+    }
+
+    @Test
+    void outOfSync() throws IOException {
+        Path path = dir.resolve("session.rec");
+        SessionRecorder recorder = new SessionRecorder(path);
+        recorder.recordMode(NetworkMode.GAME);
+        recorder.close();
+
+        when(connectionManager.getMode()).thenReturn(NetworkMode.LOGIN);
+        assertThat(replayer(path).replay()).isFalse();
+    }
+
+    @Test
+    void notARecording() throws IOException {
+        Path path = dir.resolve("session.rec");
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+        assertThat(replayer(path).replay()).isFalse();
+    }
+
+    private SessionReplayer replayer(Path path) throws IOException {
+        capture(serverBound, serverBoundData);
+        capture(clientBound, clientBoundData);
+        return new SessionReplayer(path, false, connectionManager, serverBound, clientBound);
+    }
+
+    /**
+     * The replayer re-uses its buffer, so the data has to be copied when it's pushed.
+     */
+    private static void capture(DataReader reader, List<byte[]> data) throws IOException {
+        doAnswer(invocation -> {
+            byte[] arr = invocation.getArgument(0);
+            int length = invocation.getArgument(1);
+            data.add(Arrays.copyOf(arr, length));
+            return null;
+        }).when(reader).pushData(any(byte[].class), anyInt());
+    }
+}